@@ -0,0 +1,249 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The kinds of enemies in the game (archetypes), as defined in the archetypes.txt file in a
+ * "~"-separated format, with one archetype per line after a header line:
+ *
+ *     Name~Behavior~Speed~HP~TicksPerAttack~TurnChance~Color
+ *
+ * Behavior is either "melee" (chases the player and attacks when adjacent, see MeleeEnemy) or
+ * "ranged" (wanders and shoots at the player, see RangedEnemy). Speed is in pixels per tick.
+ * TurnChance is the probability (0 to 1) that a ranged enemy changes its velocity along each axis
+ * on a given tick. Color is an RGB hex code (e.g. FF0000 for red). How many enemies of each
+ * archetype appear, and when, is given by the WaveScript.
+ *
+ * The file is read and checked once, when the game starts (see getDefault). A file with a missing
+ * field, an unknown behavior, a duplicate name, or a value out of range is rejected as a whole, so
+ * a mistake is reported right away instead of during a game. The archetypes are then compiled into
+ * one primitive array per field, indexed by archetype number (the order of the file), which is all
+ * that enemies look at while the game runs.
+ */
+public class Archetypes {
+
+    public static final String PATH_TO_ARCHETYPES = "files/archetypes.txt";
+
+    // Behaviors (see getBehavior)
+    public static final int MELEE = 0;
+    public static final int RANGED = 1;
+
+    private static final String HEADER =
+            "Name~Behavior~Speed~HP~TicksPerAttack~TurnChance~Color";
+    private static final String[] BEHAVIORS = new String[] {"melee", "ranged"};
+    private static final int FIELDS = 7;
+
+    // Number of directions a melee enemy can step in (see FlowField)
+    private static final int DIRECTIONS = 8;
+
+    private static Archetypes defaults;
+
+    // Indexed by archetype
+    private final String[] name;
+    private final int[] behavior;
+    private final int[] speed;
+    private final int[] hp;
+    private final int[] ticksPerAttack;
+    private final double[] turnChance;
+    private final Color[] color;
+
+    // Velocity of a step in each FlowField direction, indexed by archetype * DIRECTIONS + direction
+    private final int[] stepVx;
+    private final int[] stepVy;
+
+    private Archetypes(List<String[]> rows, List<Integer> lineNumbers) {
+        int count = rows.size();
+        name = new String[count];
+        behavior = new int[count];
+        speed = new int[count];
+        hp = new int[count];
+        ticksPerAttack = new int[count];
+        turnChance = new double[count];
+        color = new Color[count];
+        stepVx = new int[count * DIRECTIONS];
+        stepVy = new int[count * DIRECTIONS];
+
+        for (int a = 0; a < count; a++) {
+            String[] fields = rows.get(a);
+            int line = lineNumbers.get(a);
+            name[a] = fields[0].trim();
+            if (name[a].isEmpty()) {
+                throw invalid(line, "the name is empty");
+            }
+            for (int b = 0; b < a; b++) {
+                if (name[b].equals(name[a])) {
+                    throw invalid(line, "there is already an archetype named " + name[a]);
+                }
+            }
+            behavior[a] = parseBehavior(fields[1].trim(), line);
+            speed[a] = parseInt(fields[2], line, "Speed", 0, Enemy.SIZE - 1);
+            hp[a] = parseInt(fields[3], line, "HP", 1, Integer.MAX_VALUE);
+            ticksPerAttack[a] = parseInt(fields[4], line, "TicksPerAttack", 1, Integer.MAX_VALUE);
+            turnChance[a] = parseDouble(fields[5], line, "TurnChance", 0, 1);
+            color[a] = parseColor(fields[6].trim(), line);
+
+            for (int d = 0; d < DIRECTIONS; d++) {
+                double angle = d * 2 * Math.PI / DIRECTIONS;
+                stepVx[a * DIRECTIONS + d] = (int) Math.round(Math.cos(angle) * speed[a]);
+                stepVy[a * DIRECTIONS + d] = (int) Math.round(Math.sin(angle) * speed[a]);
+            }
+        }
+    }
+
+    /*
+     * Returns the archetypes defined in the archetypes.txt file, reading the file the first time.
+     * Throws an IllegalStateException if the file cannot be read or is not valid.
+     */
+    public static synchronized Archetypes getDefault() {
+        if (defaults == null) {
+            try {
+                defaults = load(FileSystems.getDefault().getPath(PATH_TO_ARCHETYPES));
+            } catch (IOException e) {
+                throw new IllegalStateException("There was an error opening the archetypes file.",
+                        e);
+            }
+        }
+        return defaults;
+    }
+
+    /*
+     * Reads and checks the archetypes file at the given path. Throws an IllegalStateException
+     * describing the first problem if the file is not valid.
+     */
+    public static Archetypes load(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path);
+        if (lines.isEmpty() || !lines.get(0).trim().equals(HEADER)) {
+            throw new IllegalStateException("The archetypes file must start with " + HEADER);
+        }
+
+        List<String[]> rows = new ArrayList<>();
+        List<Integer> lineNumbers = new ArrayList<>();
+        for (int i = 1; i < lines.size(); i++) {
+            if (lines.get(i).trim().isEmpty()) {
+                continue;
+            }
+            String[] fields = lines.get(i).split("~", -1);
+            if (fields.length != FIELDS) {
+                throw invalid(i + 1, "expected " + FIELDS + " fields but found " + fields.length);
+            }
+            rows.add(fields);
+            lineNumbers.add(i + 1);
+        }
+        if (rows.isEmpty()) {
+            throw new IllegalStateException("The archetypes file does not define any archetypes.");
+        }
+        return new Archetypes(rows, lineNumbers);
+    }
+
+    private static IllegalStateException invalid(int line, String problem) {
+        return new IllegalStateException(
+                "Line " + line + " of the archetypes file is not valid: " + problem + ".");
+    }
+
+    private static int parseBehavior(String field, int line) {
+        for (int b = 0; b < BEHAVIORS.length; b++) {
+            if (BEHAVIORS[b].equals(field)) {
+                return b;
+            }
+        }
+        throw invalid(line, "unknown behavior " + field);
+    }
+
+    private static int parseInt(String field, int line, String column, int min, int max) {
+        int value;
+        try {
+            value = Integer.parseInt(field.trim());
+        } catch (NumberFormatException e) {
+            throw invalid(line, column + " is not a whole number");
+        }
+        if (value < min || value > max) {
+            throw invalid(line, column + " must be between " + min + " and " + max);
+        }
+        return value;
+    }
+
+    private static double parseDouble(String field, int line, String column, double min,
+            double max) {
+        double value;
+        try {
+            value = Double.parseDouble(field.trim());
+        } catch (NumberFormatException e) {
+            throw invalid(line, column + " is not a number");
+        }
+        if (!(value >= min && value <= max)) {
+            throw invalid(line, column + " must be between " + min + " and " + max);
+        }
+        return value;
+    }
+
+    private static Color parseColor(String field, int line) {
+        if (!field.matches("[0-9A-Fa-f]{6}")) {
+            throw invalid(line, "Color must be six hex digits");
+        }
+        return new Color(Integer.parseInt(field, 16));
+    }
+
+    /*
+     * Returns the number of the archetype with the given name. Throws an IllegalArgumentException
+     * if there is none.
+     */
+    public int find(String archetypeName) {
+        for (int a = 0; a < name.length; a++) {
+            if (name[a].equals(archetypeName)) {
+                return a;
+            }
+        }
+        throw new IllegalArgumentException("There is no archetype named " + archetypeName + ".");
+    }
+
+    /*
+     * The following methods look up a single field of an archetype by number.
+     */
+
+    public int count() {
+        return name.length;
+    }
+
+    public String getName(int archetype) {
+        return name[archetype];
+    }
+
+    public int getBehavior(int archetype) {
+        return behavior[archetype];
+    }
+
+    public int getSpeed(int archetype) {
+        return speed[archetype];
+    }
+
+    public int getHP(int archetype) {
+        return hp[archetype];
+    }
+
+    public int getTicksPerAttack(int archetype) {
+        return ticksPerAttack[archetype];
+    }
+
+    public double getTurnChance(int archetype) {
+        return turnChance[archetype];
+    }
+
+    public Color getColor(int archetype) {
+        return color[archetype];
+    }
+
+    /*
+     * Returns the velocity of a step of the given archetype in the given FlowField direction.
+     */
+    public int getStepVx(int archetype, int direction) {
+        return stepVx[archetype * DIRECTIONS + direction];
+    }
+
+    public int getStepVy(int archetype, int direction) {
+        return stepVy[archetype * DIRECTIONS + direction];
+    }
+}
@@ -1,50 +1,122 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.VolatileImage;
 import javax.swing.*;
 
-import java.util.HashSet;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /*
- * Contains the main state of the game.
+ * Displays the game and turns user input into actions on it.
  * 
  * As a reminder, the game consists of a player attempting to shoot as many enemies as possible
- * before inevitably dying. The enemies (either melee or ranged) arrive in waves.
+ * before inevitably dying. The enemies (either melee or ranged) arrive in waves. The rules of the
+ * game live in Simulation; the Court only forwards keyboard and mouse input to it and paints it.
+ * 
+ * The Simulation is stepped by a GameLoop on its own thread, while input and painting happen on the
+ * Swing event dispatch thread. Input is therefore queued and applied by the game loop at the start
+ * of the next tick. After each tick, the game loop copies the game state into a Snapshot and
+ * publishes it through a SnapshotBuffer; painting only ever reads the latest published Snapshot.
+ * Neither thread ever locks or waits for the other, and painting never sees a tick half done.
+ * 
+ * The statistics shown on the Play page (score, level, time left, and HP) are kept in
+ * ObservableInts, which are only updated (on the event dispatch thread) when a tick changes one of
+ * them, so the labels showing them are not touched on every frame. The game loop hands them over
+ * together in one immutable Statistics, so the labels never show values from different ticks.
+ * 
+ * If the system property "activeRendering" is true (e.g. java -DactiveRendering=true Game), the
+ * Court is covered by a Canvas that the game loop draws on directly through a BufferStrategy,
+ * instead of asking Swing to repaint. Frames are then shown exactly when the game loop renders
+ * them, rather than whenever Swing gets around to painting. The rest of the game (menus, labels,
+ * and the HP bar) is still painted by Swing, and so are the Court's background and border, which
+ * the game loop only copies from the cached background image.
  */
 @SuppressWarnings("serial")
 public class Court extends JPanel {
     
     private Play play;
     
-    private int score = 0;
-    private boolean playing = false;
+    private volatile boolean playing = false;
     
-    public static final int COURT_WIDTH = 400;
-    public static final int COURT_HEIGHT = 400;
+    // Size of the view of the world (which may be larger; see Simulation)
+    public static final int COURT_WIDTH = Simulation.WIDTH;
+    public static final int COURT_HEIGHT = Simulation.HEIGHT;
     
     // Milliseconds per tick
-    public static final int TICK_INTERVAL = 35;
+    public static final int TICK_INTERVAL = Simulation.TICK_INTERVAL;
+    
+    private static final boolean ACTIVE_RENDERING = Boolean.getBoolean("activeRendering");
+    
+    // Number of buffers used for active rendering (i.e. double buffering)
+    private static final int BUFFER_COUNT = 2;
+    
+    private GameLoop loop;
+    
+    private Simulation simulation;
     
-    // Seconds per wave (i.e. before next one starts)
-    public static final int WAVE_INTERVAL = 10;
+    // Snapshots of the game state, filled by the game loop and painted by the event dispatch thread
+    // (or by the game loop, when rendering actively)
+    private final SnapshotBuffer snapshots = new SnapshotBuffer();
     
-    // For a constant level, each wave contains more enemies than the previous.
-    // When a new level is reached, the enemy count (i.e. wave number) resets, but each enemy 
-    // does more damage.
-    public static final int WAVES_PER_LEVEL = 3;
+    // Input from the event dispatch thread, waiting to be applied by the game loop
+    private final Queue<Runnable> input = new ConcurrentLinkedQueue<>();
     
-    private Timer tickTimer;
-    private Timer waveTimer;
-    private int timeLeft = WAVE_INTERVAL;
+    // How far (from 0 to 1) the frame being painted is between the last tick and the next one
+    private volatile double alpha = 1;
     
-    private Player player;
-    private Set<Enemy> enemies;
-    private Set<Projectile> projectiles;
+    // The camera's position in the last frame painted, used to turn mouse positions on the Court
+    // into positions in the world
+    private volatile int cameraX;
+    private volatile int cameraY;
     
-    // For a level number m and a wave number n (1-3, inclusive), the current wave contains
-    // a total of 2n enemies (n melee and n ranged). Each enemy does m damage.
-    private int levelNumber = 1;
-    private int waveNumber;
+    // The background and border of the Court, which never change, drawn once (on the event
+    // dispatch thread) and then copied onto every frame. Kept in video memory where possible, so
+    // the copy is cheap.
+    private volatile VolatileImage background;
+    
+    // Used only when rendering actively. The strategy is created by the game loop, once the canvas
+    // can be drawn on.
+    private Canvas canvas;
+    private BufferStrategy strategy;
+    
+    // The statistics shown on the Play page. Only used on the event dispatch thread.
+    private final ObservableInt score = new ObservableInt(0);
+    private final ObservableInt level = new ObservableInt(0);
+    private final ObservableInt timeLeft = new ObservableInt(0);
+    private final ObservableInt playerHP = new ObservableInt(0);
+    
+    // The statistics as of the last tick that changed any of them. Set by the game loop.
+    private volatile Statistics lastStatistics;
+    
+    // Copies the statistics set by the game loop into the ObservableInts
+    private final Runnable updateStatistics = new Runnable() {
+        public void run() {
+            Statistics statistics = lastStatistics;
+            score.set(statistics.score);
+            level.set(statistics.level);
+            timeLeft.set(statistics.timeLeft);
+            playerHP.set(statistics.playerHP);
+        }
+    };
+    
+    /*
+     * The statistics shown on the Play page as of one tick.
+     */
+    private static final class Statistics {
+        final int score;
+        final int level;
+        final int timeLeft;
+        final int playerHP;
+        
+        Statistics(int score, int level, int timeLeft, int playerHP) {
+            this.score = score;
+            this.level = level;
+            this.timeLeft = timeLeft;
+            this.playerHP = playerHP;
+        }
+    }
     
     /*
      * Sets up the initial game state.
@@ -54,40 +126,39 @@ public class Court extends JPanel {
         setPreferredSize(new Dimension(COURT_WIDTH, COURT_HEIGHT));
         setBorder(BorderFactory.createLineBorder(Color.BLACK));
         
-        setupEntitiesProjectilesAndTimers();
+        if (ACTIVE_RENDERING) {
+            setupCanvas();
+        }
+        setupSimulationAndLoop();
         setupKeysAndMouse();
     }
     
     /*
-     * Creates a new player, Set of enemies, and Set of projectiles.
+     * Creates a new Simulation (which contains the player, enemies, and projectiles, and begins the
+     * first wave) and publishes a first snapshot of it, then starts the game loop that steps it.
      */
-    private void setupEntitiesProjectilesAndTimers() {
-        player = new Player(this);
-        enemies = new HashSet<>();
-        projectiles = new HashSet<>();
-        
-        tickTimer = new Timer(TICK_INTERVAL, new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
-                tick();
-            }
-        });
-        tickTimer.start();
-        
-        // Begins first wave, then starts the wave timer.
-        newWave();
-        waveTimer = new Timer(1000, new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
-                if (playing) {
-                    timeLeft--;
-                    if (timeLeft <= 0) {
-                        timeLeft = WAVE_INTERVAL;
-                        newWave();
-                    }
-                }
-            }
-        });
+    private void setupSimulationAndLoop() {
+        simulation = new Simulation();
+        simulation.writeSnapshot(snapshots.back(), COURT_WIDTH, COURT_HEIGHT);
+        snapshots.publish();
+        statisticsChanged();
+        updateStatistics.run();
         
-        waveTimer.start();
+        loop = new GameLoop(this);
+        loop.start();
+    }
+    
+    /*
+     * Covers the Court with a Canvas for active rendering. The Canvas never takes the keyboard
+     * focus, so that the Court's key bindings keep working.
+     */
+    private void setupCanvas() {
+        canvas = new Canvas();
+        canvas.setIgnoreRepaint(true);
+        canvas.setFocusable(false);
+        setLayout(null);
+        canvas.setBounds(0, 0, COURT_WIDTH, COURT_HEIGHT);
+        add(canvas);
     }
     
     /*
@@ -116,7 +187,11 @@ public class Court extends JPanel {
         getActionMap().put("DOWN released", stop);
         getActionMap().put("RIGHT released", stop);
         
-        addMouseListener(new ShootingListener());
+        if (canvas != null) {
+            canvas.addMouseListener(new ShootingListener());
+        } else {
+            addMouseListener(new ShootingListener());
+        }
     }
     
     /*
@@ -132,98 +207,140 @@ public class Court extends JPanel {
         }
         
         public void actionPerformed(ActionEvent e) {
-            if (vx != null) {
-                player.setVx(vx);
-            }
-            if (vy != null) {
-                player.setVy(vy);
-            }
+            input.add(new Runnable() {
+                public void run() {
+                    if (vx != null) {
+                        simulation.setPlayerVx(vx);
+                    }
+                    if (vy != null) {
+                        simulation.setPlayerVy(vy);
+                    }
+                }
+            });
         }
     }
     
     /*
      * Defines a mouse listener class that causes the player to shoot a projectile when the mouse
-     * is pressed.
+     * is pressed. The player shoots toward the point in the world that was shown under the mouse.
      */
     private class ShootingListener extends MouseAdapter implements MouseListener {
         public void mousePressed(MouseEvent e) {
-            player.setTarget(e.getX(), e.getY());
-            player.attack();
+            final int x = e.getX() + cameraX;
+            final int y = e.getY() + cameraY;
+            input.add(new Runnable() {
+                public void run() {
+                    simulation.playerShoot(x, y);
+                }
+            });
         }
     }
     
     /*
-     * Updates the game state (if the game is currently active). Moves all projectiles, then moves
-     * the player, then moves all entities.
+     * Applies any queued input, then steps the Simulation by one tick and publishes a snapshot of
+     * it (if the game is currently active). If the player has no more HP, then the game is stopped,
+     * and the Game Over card is shown. Called by the game loop.
      */
     void tick() {
         if (playing) {
-            
-            // Create set of all Entities in the game.
-            Set<Entity> entities = new HashSet<>();
-            entities.add(player);
-            entities.addAll(getEnemiesAsEntities());
-            
-            // Moves all projectiles.
-            for (Projectile p : new HashSet<Projectile>(projectiles)) {
-                p.move();
+            Runnable command = input.poll();
+            while (command != null) {
+                command.run();
+                command = input.poll();
             }
+            simulation.tick();
             
-            // Moves the player. If the player has no more HP, then the game is stopped, and the 
-            // Game Over card is shown.
-            player.move(entities);
-            if (player.getHP() <= 0) {
-                toggle();
-                Game.addCard(new GameOver(play), "Game Over");
-                Game.showCard("Game Over");
+            simulation.writeSnapshot(snapshots.back(), COURT_WIDTH, COURT_HEIGHT);
+            snapshots.publish();
+            if (statisticsChanged()) {
+                SwingUtilities.invokeLater(updateStatistics);
             }
             
-            // Moves all enemies. If an enemy has no more HP, then it is removed from the game
-            // state, and the score is incremented by the current level number.
-            for (Enemy e : new HashSet<Enemy>(enemies)) {
-                if (e.getInitialized()) {
-                    e.move(entities);
-                    if (e.getHP() <= 0) {
-                        enemies.remove(e);
-                        score += levelNumber;
-                    } else {
-                        e.attack();
+            if (simulation.isOver()) {
+                playing = false;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        Game.addCard(new GameOver(play), "Game Over");
+                        Game.showCard("Game Over");
                     }
-                } else {
-                    e.initialize();
-                }
+                });
             }
-            
-            // Resets the wave timer and starts a new wave of enemies if there are no enemies left.
-            // If the current wave is entirely defeated before the next wave begins, the score is
-            // incremented by the number of seconds left until the start of the next wave. 
-            if (enemies.isEmpty()) {
-                score += timeLeft;
-                timeLeft = WAVE_INTERVAL;
-                newWave();
-            }
-            
-            // Repaints this component.
-            play.repaint();
         }        
     }
     
-    // For a level number m and wave number, creates a wave consisting of 2n enemies (n melee and n
-    // n ranged), each of which does m damage.
-    private void newWave() {
-        if (waveNumber == WAVES_PER_LEVEL) {
-            waveNumber = 1;
-            levelNumber++;
-        } else {
-            waveNumber++;
+    /*
+     * Determines if any of the statistics shown on the Play page have changed since the last time
+     * this method was called, and if so, records their current values. Called by the game loop.
+     */
+    private boolean statisticsChanged() {
+        int newScore = simulation.getScore();
+        int newLevel = simulation.getLevel();
+        int newTimeLeft = simulation.getTimeLeft();
+        int newPlayerHP = simulation.getPlayerView().getHP();
+        Statistics last = lastStatistics;
+        if (last != null && newScore == last.score && newLevel == last.level
+                && newTimeLeft == last.timeLeft && newPlayerHP == last.playerHP) {
+            return false;
         }
-        
-        for (int i = 0; i < waveNumber; i++) {
-            (new MeleeEnemy(this, levelNumber)).spawn();
-            (new RangedEnemy(this, levelNumber)).spawn();
+        lastStatistics = new Statistics(newScore, newLevel, newTimeLeft, newPlayerHP);
+        return true;
+    }
+    
+    /*
+     * Requests a repaint of the Court (but not the rest of the Play page), with entities drawn the
+     * given fraction (from 0 to 1) of the way from their previous positions to their current ones.
+     * When rendering actively, draws and shows the frame right away instead. Called by the game
+     * loop once per display refresh.
+     */
+    void render(double alpha) {
+        if (playing) {
+            if (canvas != null) {
+                renderActively(alpha);
+            } else {
+                this.alpha = alpha;
+                repaint();
+            }
         }
     }
     
+    /*
+     * Draws a frame on the Canvas and shows it, redrawing it if the buffers' contents are lost in
+     * the meantime. Does nothing unless the Canvas is showing on screen.
+     * 
+     * The border is only ever painted on the event dispatch thread, into the cached background
+     * (see paintBackground), which is copied here. Until that image exists, or if it has been lost,
+     * only the background color is drawn, and the Court is repainted so that the image is redrawn.
+     */
+    private void renderActively(double alpha) {
+        if (!canvas.isDisplayable()) {
+            return;
+        }
+        if (strategy == null) {
+            canvas.createBufferStrategy(BUFFER_COUNT);
+            strategy = canvas.getBufferStrategy();
+        }
+        Snapshot snapshot = snapshots.acquire();
+        VolatileImage image = background;
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    if (image != null && !image.contentsLost()) {
+                        g.drawImage(image, 0, 0, null);
+                    } else {
+                        g.setColor(getBackground());
+                        g.fillRect(0, 0, COURT_WIDTH, COURT_HEIGHT);
+                        repaint();
+                    }
+                    paintSnapshot(snapshot, g, alpha);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+    }
+    
     /*
      * Switches the game state between active and inactive (represented by the boolean "playing").
      */
@@ -233,9 +350,17 @@ public class Court extends JPanel {
     
     /*
      * The following methods are getter/setter methods for certain private fields.
+     * 
+     * The game statistics (score, level, time left, and player HP) must only be used on the event
+     * dispatch thread. The other methods use the live Simulation, so they are only safe while the
+     * game loop is not ticking it (e.g. while the game is paused, or in tests after turnOffTimers).
      */
     
     public int getScore() {
+        return score.get();
+    }
+    
+    public ObservableInt getScoreValue() {
         return score;
     }
     
@@ -243,44 +368,60 @@ public class Court extends JPanel {
         return playing;
     }
     
+    public Simulation getSimulation() {
+        return simulation;
+    }
+    
     public Set<Entity> getEnemiesAsEntities() {
-        Set<Entity> entities = new HashSet<>();
-        for (Enemy e : enemies) {
-            entities.add(e);
-        }
-        return entities;
+        return simulation.getEnemiesAsEntities();
     }
     
     public Set<Enemy> getEnemies() {
-        return new HashSet<Enemy>(enemies);
+        return simulation.getEnemies();
     }
     
     public Set<Projectile> getProjectiles() {
-        return new HashSet<Projectile>(projectiles);
+        return simulation.getProjectiles();
     }
     
     public void setPlayerHP(int i) {
-        player.setHP(i);
+        simulation.setPlayerHP(i);
+    }
+    
+    public PlayerView getPlayerView() {
+        return simulation.getPlayerView();
+    }
+    
+    public int getPlayerHP() {
+        return playerHP.get();
     }
     
-    public Player getPlayerCopy() {
-        return player.clone();
+    public ObservableInt getPlayerHPValue() {
+        return playerHP;
     }
     
     public void setPlayerVx(int i) {
-        player.setVx(i);
+        simulation.setPlayerVx(i);
     }
     
     public void setPlayerVy(int i) {
-        player.setVy(i);
+        simulation.setPlayerVy(i);
     }
     
     public int getTimeLeft() {
+        return timeLeft.get();
+    }
+    
+    public ObservableInt getTimeLeftValue() {
         return timeLeft;
     }
     
     public int getLevel() {
-        return levelNumber;
+        return level.get();
+    }
+    
+    public ObservableInt getLevelValue() {
+        return level;
     }
     
     /*
@@ -288,44 +429,109 @@ public class Court extends JPanel {
      */
     
     public void addEnemy(Enemy e) {
-        enemies.add(e);
+        simulation.addEnemy(e);
     }
     
     public void removeEnemy(Enemy e) {
-        enemies.remove(e);
+        simulation.removeEnemy(e);
     }
     
     public void addProjectile(Projectile p) {
-        projectiles.add(p);
+        simulation.addProjectile(p);
     }
     
     public void removeProjectile(Projectile p) {
-        projectiles.remove(p);
+        simulation.removeProjectile(p);
     }
     
     /*
-     * Turns off the tick and wave timers. Used for testing.
+     * Stops the game loop. Used for testing.
      */
     public void turnOffTimers() {
-        tickTimer.stop();
-        waveTimer.stop();
+        loop.stop();
+    }
+    
+    /*
+     * Stops the game loop once the Court has been removed from the GUI (i.e. when its Play card is
+     * removed after restarting or returning to the main menu).
+     */
+    @Override
+    public void removeNotify() {
+        loop.stop();
+        super.removeNotify();
     }
     
     /*
-     * Repaints the Court, all enemies, the player, and all projectiles.
+     * Repaints the Court, all enemies, the player, and all projectiles, as of the latest snapshot.
+     * When rendering actively, the game loop does this on the Canvas instead, so only the
+     * background is painted here.
      */
     @Override
     public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        for (Enemy e : enemies) {
-            e.draw(g);
+        paintBackground(g);
+        if (canvas == null) {
+            paintSnapshot(snapshots.acquire(), g, alpha);
         }
-        player.draw(g);
-        for (Projectile p : projectiles) {
-            p.draw(g);
+    }
+    
+    /*
+     * Paints the given snapshot, and remembers where its camera was for mouse input.
+     */
+    private void paintSnapshot(Snapshot snapshot, Graphics g, double a) {
+        cameraX = snapshot.getCameraX(a);
+        cameraY = snapshot.getCameraY(a);
+        snapshot.paint(g, a);
+    }
+    
+    /*
+     * Copies the cached background (which includes the border) onto the Court, first redrawing it
+     * if it does not exist yet, has the wrong size, or has been lost (which can happen to a
+     * VolatileImage at any time, e.g. when the display mode changes). If no image can be created,
+     * the background and border are painted directly instead. A new image is only stored once it
+     * has been drawn, since the game loop may copy it at any time when rendering actively.
+     */
+    private void paintBackground(Graphics g) {
+        VolatileImage image = background;
+        do {
+            int status = VolatileImage.IMAGE_INCOMPATIBLE;
+            if (image != null && image.getWidth() == getWidth()
+                    && image.getHeight() == getHeight()) {
+                status = image.validate(getGraphicsConfiguration());
+            }
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                image = createVolatileImage(getWidth(), getHeight());
+                if (image == null) {
+                    super.paintComponent(g);
+                    super.paintBorder(g);
+                    return;
+                }
+                renderBackground(image);
+                background = image;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                renderBackground(image);
+            }
+            g.drawImage(image, 0, 0, null);
+        } while (image.contentsLost());
+    }
+    
+    private void renderBackground(VolatileImage image) {
+        Graphics g = image.createGraphics();
+        try {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+            super.paintBorder(g);
+        } finally {
+            g.dispose();
         }
     }
     
+    /*
+     * Does nothing, since the border is part of the cached background (see paintBackground).
+     */
+    @Override
+    protected void paintBorder(Graphics g) {
+    }
+    
     
     @Override
     public Dimension getPreferredSize() {
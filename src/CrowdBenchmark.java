@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+ * Measures how long ticks take with a dense crowd of enemies, without any user interface. Used to
+ * check that waves of several thousand enemies stay within the tick budget (TICK_INTERVAL).
+ *
+ * The given number of enemies (of every archetype in turn) is placed at random in an empty world
+ * sized so that enemies cover about 1 / AREA_PER_ENEMY of it, on top of the Simulation's own waves.
+ * The player stands still and does not shoot, so the melee enemies pack around it, and its HP is
+ * restored before every tick, so the game does not end. After WARMUP_TICKS, every tick is timed,
+ * and the mean, 99th percentile, and longest tick are printed.
+ *
+ * The run fails (exits with status 1) if the 99th percentile tick takes longer than TICK_INTERVAL,
+ * or if any two entities overlap after any tick.
+ *
+ * Usage: java CrowdBenchmark [enemies [ticks [seed]]]
+ */
+public class CrowdBenchmark {
+
+    private static final int DEFAULT_ENEMIES = 3000;
+    private static final int DEFAULT_TICKS = 3000;
+    private static final int WARMUP_TICKS = 500;
+
+    // World area per enemy, in units of the area of an enemy
+    private static final int AREA_PER_ENEMY = 8;
+
+    private static final double PERCENTILE = 0.99;
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    public static void main(String[] args) {
+        try {
+            Archetypes.getDefault();
+            WaveScript.getDefault();
+        } catch (IllegalStateException e) {
+            System.out.println("There was an error loading the game files: " + e.getMessage());
+            return;
+        }
+
+        int enemies = DEFAULT_ENEMIES;
+        if (args.length > 0) {
+            enemies = Integer.parseInt(args[0]);
+        }
+        int ticks = DEFAULT_TICKS;
+        if (args.length > 1) {
+            ticks = Integer.parseInt(args[1]);
+        }
+        long seed = new SplittableRandom().nextLong();
+        if (args.length > 2) {
+            seed = Long.parseLong(args[2]);
+        }
+
+        int side = (int) Math.sqrt((double) enemies * AREA_PER_ENEMY) * Enemy.SIZE;
+        Simulation simulation = new Simulation(side, side, null, seed);
+        int placed = placeCrowd(simulation, enemies);
+
+        long[] durations = new long[Math.max(ticks - WARMUP_TICKS, 0)];
+        long overlappingTicks = 0;
+        int played = 0;
+        for (int t = 0; t < ticks && !simulation.isOver(); t++) {
+            simulation.damagePlayer(simulation.getPlayerView().getHP() - Player.HP);
+
+            long start = System.nanoTime();
+            simulation.tick();
+            long duration = System.nanoTime() - start;
+            if (t >= WARMUP_TICKS) {
+                durations[t - WARMUP_TICKS] = duration;
+            }
+            if (simulation.countOverlaps() > 0) {
+                overlappingTicks++;
+            }
+            played++;
+        }
+
+        int timed = Math.max(played - WARMUP_TICKS, 0);
+        long[] sorted = Arrays.copyOf(durations, timed);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long duration : sorted) {
+            total += duration;
+        }
+        double mean = timed > 0 ? total / NANOS_PER_MILLI / timed : 0;
+        double percentile = timed > 0
+                ? sorted[Math.min((int) (timed * PERCENTILE), timed - 1)] / NANOS_PER_MILLI : 0;
+        double longest = timed > 0 ? sorted[timed - 1] / NANOS_PER_MILLI : 0;
+
+        System.out.println("Seed: " + seed);
+        System.out.println("World: " + side + " x " + side);
+        System.out.println("Enemies placed: " + placed + " of " + enemies);
+        System.out.println("Enemies at the end: " + simulation.enemies().size());
+        System.out.println("Ticks: " + played + " (" + timed + " timed)");
+        System.out.printf("Mean tick: %.3f ms%n", mean);
+        System.out.printf("99th percentile tick: %.3f ms%n", percentile);
+        System.out.printf("Longest tick: %.3f ms%n", longest);
+        System.out.println("Tick budget: " + Simulation.TICK_INTERVAL + " ms");
+        System.out.println("Ticks after which entities overlapped: " + overlappingTicks);
+        if (percentile > Simulation.TICK_INTERVAL || overlappingTicks > 0) {
+            System.exit(1);
+        }
+    }
+
+    /*
+     * Places up to the given number of enemies (which do no damage) at random free positions in
+     * the world, cycling through the archetypes, and returns the number placed.
+     */
+    private static int placeCrowd(Simulation simulation, int enemies) {
+        Archetypes archetypes = simulation.getArchetypes();
+        int placed = 0;
+        for (int i = 0; i < enemies; i++) {
+            int archetype = i % archetypes.count();
+            Enemy e;
+            if (archetypes.getBehavior(archetype) == Archetypes.MELEE) {
+                e = new MeleeEnemy(simulation, archetype, 0);
+            } else {
+                e = new RangedEnemy(simulation, archetype, 0);
+            }
+            if (e.spawn()) {
+                placed++;
+            }
+        }
+        return placed;
+    }
+}
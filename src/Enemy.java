@@ -1,104 +1,346 @@
-import java.util.Set;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
 
 /*
- * Describes common properties of enemies in the game. The two concrete subclasses of Enemy are
- * MeleeEnemy and RangedEnemy.
+ * Describes common properties of enemies in the game. Every enemy has an archetype (see
+ * Archetypes), which gives its HP, speed, and attack rate, and whose behavior is one of the two
+ * concrete subclasses of Enemy: MeleeEnemy and RangedEnemy.
  * 
- * The Court creates an enemy by first spawning the enemy and then initializing it. After
- * constructing an enemy, spawning it sets its position to a random position and adds it to the 
- * Court's Set of entities. The enemy is initialized over the course of 20 ticks, after which it is
- * free to move and attack.
+ * The Simulation creates an enemy by first spawning the enemy and then initializing it. After
+ * constructing an enemy, spawning it sets its position to a random free position and adds it to
+ * the Simulation's List of enemies. Spawning gives up after SPAWN_ATTEMPTS positions, so that it
+ * cannot take long even when the world is nearly full. The enemy is initialized over the course of
+ * 20 ticks (starting with the tick after it is placed), after which it is free to move and
+ * attack.
+ *
+ * Initialization and attacks are timed by the Simulation's clock (see TimingWheel): placing an
+ * enemy schedules the end of its initialization, which schedules its first attack, and each attack
+ * schedules the next. An enemy does nothing for these between its timers.
+ *
+ * Each tick, an enemy first plans its velocity (see plan), and then moves with it (see
+ * EntityStore.moveEnemies, which moves every enemy in one pass). Planning only reads the game
+ * state, so the Simulation can plan many enemies in parallel before moving any of them. Enemies
+ * that chase the player can also steer around each other (see steer), so that a crowd of them
+ * spreads out instead of piling onto the same point.
  */
 public abstract class Enemy extends Entity {
     
     public static final int SIZE = 20;
-    public static final int HP = 1;
     
     public static final int TICKS_TO_INITIALIZE = 20;
     
-    private int initializationStage = 0;
+    // Number of random positions that spawn() tries before giving up
+    public static final int SPAWN_ATTEMPTS = 16;
+
+    // Number of nearby enemies that each enemy steers around, and how close (center to center, in
+    // pixels) they have to be
+    private static final int NEIGHBORS = 4;
+    private static final int NEIGHBOR_RADIUS = 2 * SIZE;
+
+    // How strongly an enemy is pushed away from its neighbors, and turned toward their heading
+    private static final double SEPARATION_WEIGHT = 1.0;
+    private static final double ALIGNMENT_WEIGHT = 0.25;
+    
+    // Angle (in radians) between the directions in which successive pairs of enemies in the same
+    // place are pushed apart (see separationAngle), which spreads the directions evenly
+    private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+    // Kept in a constant, so that it is interned when the class is loaded rather than when a
+    // method of the class is first fully optimized (see Simulation)
+    private static final String OCCUPIED_ERROR =
+            "Another entity or a wall already exists at the given point.";
+    
+    // Fires when the enemy has finished initializing
+    private final TimingWheel.Timer initializationTimer = new TimingWheel.Timer() {
+        protected void fire() {
+            setInitialized(true);
+            getSimulation().getClock().schedule(attackTimer, getTicksPerAttack());
+        }
+    };
+    
+    // Fires whenever the enemy's next attack is due
+    private final TimingWheel.Timer attackTimer = new TimingWheel.Timer() {
+        protected void fire() {
+            attack();
+            getSimulation().getClock().schedule(this, getTicksPerAttack());
+        }
+    };
+    
+    // This enemy's own random number generator (see Simulation.newRandom)
+    private final SplittableRandom random;
+    
+    // Area (of top-left corners) in which spawn() tries positions, which is the whole world
+    // unless it is set (see WavePlan). The right and bottom are exclusive.
+    private int spawnLeft = 0;
+    private int spawnTop = 0;
+    private int spawnRight;
+    private int spawnBottom;
+
+    // Number of calls to spawn() that have not found a free position
+    private int failedSpawns = 0;
+    
+    // Used by steer to find this enemy's neighbors
+    private final List<Entity> neighbors = new ArrayList<>(NEIGHBORS);
+    private final int[] neighborDistances = new int[NEIGHBORS];
+    
+    /* 
+     * Creates an enemy of the given archetype, with a generator split from the Simulation's.
+     */
+    Enemy(Simulation simulation, int archetype) {
+        this(simulation, archetype, simulation.newRandom());
+    }
     
     /* 
-     * Sets initial position to (0, 0), but this is changed in the spawn method below.
+     * Creates an enemy of the given archetype with the given random number generator. Sets initial
+     * position to (0, 0), but this is changed in the spawn method below. Only reads the
+     * Simulation's settings, so it can be called from any thread (see WavePlan).
      */
-    Enemy(Court court) {
-        super(0, 0, 0, 0, SIZE, SIZE, HP, court, Court.COURT_WIDTH, Court.COURT_HEIGHT);
+    Enemy(Simulation simulation, int archetype, SplittableRandom random) {
+        super(archetype, 0, 0, 0, 0, SIZE, SIZE, simulation.getArchetypes().getHP(archetype),
+                simulation, simulation.getWidth(), simulation.getHeight());
         this.setInitialized(false);
+        this.random = random;
+        this.spawnRight = this.getMaxX();
+        this.spawnBottom = this.getMaxY();
     }
     
     /*
-     * Randomizes enemy position and makes sure that there are no preexisting entities there.
-     * The enemy is then added to the game state (i.e. the Court's Set<Enemy> field).
+     * Randomizes enemy position (within its spawn region) and makes sure that there are no
+     * preexisting entities or walls there (only the entities near each candidate position, as found
+     * by the SpatialGrid, are checked). If a free position is found within SPAWN_ATTEMPTS tries,
+     * the enemy is added to the game state (i.e. the Simulation's List<Enemy> field) and true is
+     * returned. Otherwise, the enemy is not added, the failure is counted (see getFailedSpawns),
+     * and false is returned.
      */
-    public void spawn() {
-        Court court = this.getCourt();
-        Set<Entity> entities = court.getEnemiesAsEntities();
-        entities.add(court.getPlayerCopy());
-        boolean validLocation = false;
-        int initX = 0;
-        int initY = 0;
+    public boolean spawn() {
+        Simulation simulation = this.getSimulation();
+        SplittableRandom spawnRandom = simulation.getSpawnRandom();
         
-        while (!validLocation) {
-            initX = ThreadLocalRandom.current().nextInt(0, this.getMaxX());
-            initY = ThreadLocalRandom.current().nextInt(0, this.getMaxY());
-            
-            this.setPx(initX);
-            this.setPy(initY);
+        for (int attempt = 0; attempt < SPAWN_ATTEMPTS; attempt++) {
+            this.setPx(spawnRandom.nextInt(spawnLeft, spawnRight));
+            this.setPy(spawnRandom.nextInt(spawnTop, spawnBottom));
             
-            validLocation = true;
-            for (Entity e : entities) {
-                if (this.intersects(e)) {
-                    validLocation = false;
-                }
+            if (!isOccupied()) {
+                simulation.addEnemy(this);
+                return true;
             }
         }
-                        
-        court.addEnemy(this);
+        failedSpawns++;
+        return false;
+    }
+
+    /*
+     * Returns the number of calls to spawn() that have not found a free position.
+     */
+    int getFailedSpawns() {
+        return failedSpawns;
+    }
+    
+    /*
+     * Limits the positions that spawn() tries to those with their top-left corner from (left, top)
+     * up to (but not including) (right, bottom).
+     */
+    void setSpawnRegion(int left, int top, int right, int bottom) {
+        spawnLeft = left;
+        spawnTop = top;
+        spawnRight = right;
+        spawnBottom = bottom;
     }
     
     /*
      * Spawns at an enemy at the given location, which must be valid. Used only for testing.
      */
     public void spawn(int px, int py) {
-        Court court = this.getCourt();
-        Set<Entity> entities = court.getEnemiesAsEntities();
-        entities.add(court.getPlayerCopy());
+        Simulation simulation = this.getSimulation();
         this.setPx(px);
         this.setPy(py);
-        for (Entity e : entities) {
-            if (this.intersects(e)) {
-                throw new IllegalArgumentException(
-                        "Another entity already exists at the given point.");
-            }
+        if (isOccupied()) {
+            throw new IllegalArgumentException(OCCUPIED_ERROR);
         }
-        court.addEnemy(this);
+        simulation.addEnemy(this);
     }
     
     /*
-     * For an uninitialized enemy, increments the initializationStage by 1 each tick. After 20
-     * ticks, the enemy becomes initialized and can then move and attack.
+     * Determines if the (not yet spawned) enemy's current position conflicts with that of any
+     * entity already in the game, or with a wall.
      */
-    public void initialize() {
-        initializationStage++;
-        if (initializationStage >= TICKS_TO_INITIALIZE) {
-            this.setInitialized(true);
+    private boolean isOccupied() {
+        TileMap map = this.getSimulation().getMap();
+        if (map != null && map.boxHitsSolid(
+                this.getPx(), this.getPy(), this.getWidth(), this.getHeight())) {
+            return true;
+        }
+        List<Entity> nearby = this.getSimulation().getGrid().query(
+                this.getPx(), this.getPy(), this.getWidth(), this.getHeight());
+        for (int i = 0; i < nearby.size(); i++) {
+            if (this.intersects(nearby.get(i))) {
+                return true;
+            }
         }
+        return false;
+    }
+    
+    /*
+     * Starts initializing the enemy, which has just been placed. After 20 ticks, the enemy becomes
+     * initialized and can then move and attack.
+     */
+    void startInitializing() {
+        getSimulation().getClock().schedule(initializationTimer, TICKS_TO_INITIALIZE);
+    }
+    
+    /*
+     * Stops the enemy's timers. Called when the enemy is removed from the game.
+     */
+    void stopTimers() {
+        TimingWheel clock = getSimulation().getClock();
+        clock.cancel(initializationTimer);
+        clock.cancel(attackTimer);
     }
     
     /*
-     * Getter method for initialization stage.
+     * Returns the number of ticks the enemy has spent initializing (up to TICKS_TO_INITIALIZE).
      */
     public int getInitStage() {
-        return initializationStage;
+        if (this.getInitialized()) {
+            return TICKS_TO_INITIALIZE;
+        } else if (!initializationTimer.isScheduled()) {
+            return 0;
+        }
+        return TICKS_TO_INITIALIZE - getSimulation().getClock().ticksUntil(initializationTimer);
     }
     
     /*
-     * Changes the velocity of the enemy according to its expected behavior. This method is called
-     * at the beginning of the move method in Entity, and it only applies to enemies.
+     * Returns the number of the enemy's archetype (see Archetypes), which is its kind.
+     */
+    public int getArchetype() {
+        return getKind();
+    }
+    
+    /*
+     * Returns the number of ticks between the enemy's attacks, as given by its archetype.
+     */
+    protected int getTicksPerAttack() {
+        return getSimulation().getArchetypes().getTicksPerAttack(getKind());
+    }
+    
+    /*
+     * Returns the enemy's own random number generator, which only the enemy uses, so that it can be
+     * used while planning on any thread.
+     */
+    protected SplittableRandom getRandom() {
+        return random;
+    }
+    
+    /*
+     * Chooses the velocity for the enemy's next move, starting from its current velocity, and
+     * keeps it as the enemy's planned velocity in the EntityStore, which the enemy takes on when
+     * it moves (see EntityStore.moveEnemies). Only reads the game state (other than the enemy's
+     * planned velocity), so that the Simulation can plan every enemy at once, on several threads.
+     */
+    void plan() {
+        setPlannedVelocity(this.getVx(), this.getVy());
+        updateVelocity();
+    }
+    
+    /*
+     * The planned velocity is only kept while the enemy is part of the game.
+     */
+    protected int getPlannedVx() {
+        return getSimulation().getEntityStore().getPlannedVx(getSlot());
+    }
+    
+    protected int getPlannedVy() {
+        return getSimulation().getEntityStore().getPlannedVy(getSlot());
+    }
+    
+    protected void setPlannedVelocity(int vx, int vy) {
+        getSimulation().getEntityStore().setPlannedVelocity(getSlot(), vx, vy);
+    }
+    
+    /*
+     * Plans the velocity of the enemy (see setPlannedVelocity) according to its expected behavior.
+     * Called by plan, before each move.
      * 
      * For melee enemies, the velocity will be updated to target the player's new position.
      * For ranged enemies, the velocity may be changed to a new random velocity.
      */
     public abstract void updateVelocity();
+    
+    /*
+     * Adjusts the planned velocity to keep the enemy apart from its nearest neighboring enemies
+     * (as found by the SpatialGrid). The enemy is pushed away from each neighbor, more strongly
+     * the closer it is (separation), and turned a little toward the average velocity of the
+     * neighbors that are moving (alignment). A neighbor in exactly the same place pushes the enemy
+     * as hard as possible in a direction given by their slots (see separationAngle), so that even
+     * enemies on top of each other move apart. The enemy's speed stays the same, and a stationary
+     * enemy stays where it is.
+     */
+    protected void steer() {
+        int vx = getPlannedVx();
+        int vy = getPlannedVy();
+        if (vx == 0 && vy == 0) {
+            return;
+        }
+        double speed = Math.sqrt(vx * vx + vy * vy);
+        
+        int centerX = this.getPx() + this.getWidth() / 2;
+        int centerY = this.getPy() + this.getHeight() / 2;
+        this.getSimulation().getGrid().nearest(centerX, centerY, NEIGHBOR_RADIUS, NEIGHBORS, this,
+                neighbors, neighborDistances);
+        
+        double separationX = 0;
+        double separationY = 0;
+        int headingX = 0;
+        int headingY = 0;
+        int moving = 0;
+        for (int i = 0; i < neighbors.size(); i++) {
+            Entity that = neighbors.get(i);
+            if (!that.isEnemy()) {
+                continue;
+            }
+            double dx = centerX - (that.getPx() + that.getWidth() / 2);
+            double dy = centerY - (that.getPy() + that.getHeight() / 2);
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            if (distance > 0) {
+                double push = (NEIGHBOR_RADIUS - distance) / NEIGHBOR_RADIUS / distance;
+                separationX += dx * push;
+                separationY += dy * push;
+            } else {
+                double angle = separationAngle(this.getSlot(), that.getSlot());
+                separationX += Math.cos(angle);
+                separationY += Math.sin(angle);
+            }
+            if (that.getInitialized() && (that.getVx() != 0 || that.getVy() != 0)) {
+                headingX += that.getVx();
+                headingY += that.getVy();
+                moving++;
+            }
+        }
+        
+        double steeredX = vx + SEPARATION_WEIGHT * speed * separationX;
+        double steeredY = vy + SEPARATION_WEIGHT * speed * separationY;
+        if (moving > 0) {
+            steeredX += ALIGNMENT_WEIGHT * ((double) headingX / moving - vx);
+            steeredY += ALIGNMENT_WEIGHT * ((double) headingY / moving - vy);
+        }
+        double steeredSpeed = Math.sqrt(steeredX * steeredX + steeredY * steeredY);
+        if (steeredSpeed > 0) {
+            setPlannedVelocity((int) Math.round(steeredX / steeredSpeed * speed),
+                    (int) Math.round(steeredY / steeredSpeed * speed));
+        }
+    }
+    
+    /*
+     * Returns the direction (in radians) in which the enemy in the given slot is pushed away from
+     * an enemy in the same place, in the other given slot. The two enemies are pushed in opposite
+     * directions, and each pair of slots gets its own direction, so a stack of enemies spreads out
+     * instead of moving together. Depends only on the slots, so it is the same on every thread.
+     */
+    private static double separationAngle(int slot, int otherSlot) {
+        int low = Math.min(slot, otherSlot);
+        int high = Math.max(slot, otherSlot);
+        double angle = (31.0 * low + high) * GOLDEN_ANGLE;
+        return slot == high ? angle : angle + Math.PI;
+    }
 }
@@ -0,0 +1,68 @@
+/*
+ * A first-in, first-out queue of enemies, kept in a ring buffer. Unlike an ArrayDeque, the queue
+ * can be given room for a number of enemies ahead of time (see ensureCapacity), so that adding
+ * them later does not allocate. Used by a Simulation for the enemies waiting to spawn.
+ */
+public class EnemyQueue {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Enemy[] enemies = new Enemy[INITIAL_CAPACITY];
+
+    // Index of the first enemy in the queue, and the number of enemies in it
+    private int first = 0;
+    private int size = 0;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /*
+     * Returns the first enemy in the queue without removing it, or null if the queue is empty.
+     */
+    public Enemy peek() {
+        return enemies[first];
+    }
+
+    /*
+     * Removes and returns the first enemy in the queue, or returns null if the queue is empty.
+     */
+    public Enemy poll() {
+        Enemy e = enemies[first];
+        if (e != null) {
+            enemies[first] = null;
+            first = (first + 1) % enemies.length;
+            size--;
+        }
+        return e;
+    }
+
+    /*
+     * Adds the enemy to the end of the queue.
+     */
+    public void add(Enemy e) {
+        ensureCapacity(size + 1);
+        enemies[(first + size) % enemies.length] = e;
+        size++;
+    }
+
+    /*
+     * Makes room for at least the given number of enemies in total, so that adding enemies up to
+     * that number does not allocate.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= enemies.length) {
+            return;
+        }
+        Enemy[] larger = new Enemy[Math.max(capacity, 2 * enemies.length)];
+        for (int i = 0; i < size; i++) {
+            larger[i] = enemies[(first + i) % enemies.length];
+        }
+        enemies = larger;
+        first = 0;
+    }
+}
@@ -1,20 +1,23 @@
-import java.awt.*;
-import java.util.Set;
-
 /*
  * Describes all entities in the game, i.e. players and enemies. (see Player and Enemy subclasses)
+ * 
+ * While an entity is part of the game, its state is kept in the Simulation's EntityStore, which
+ * moves it along with every other entity, and an Entity object is only a handle to it (see attach).
+ * Before the entity is added to the game, and after it has been removed, the handle holds the
+ * entity's state itself, so an enemy can be positioned before it is spawned, and a removed entity
+ * still reports its final state.
  */
 public abstract class Entity {
+    
+    // The entity's state, used only while it is not part of the game (see attach)
     private int px;
     private int py;
+    
+    // Position at the start of the current tick (see savePosition)
+    private int prevPx;
+    private int prevPy;
     private int vx;
     private int vy;
-    private int width;
-    private int height;
-    
-    private int maxX;
-    private int maxY;
-    
     private int hp;
     
     /* 
@@ -23,12 +26,31 @@ public abstract class Entity {
      */
     private boolean initialized;
     
-    private Court court;
+    // EntityStore.PLAYER for the player, or the archetype of an enemy
+    private final int kind;
+    
+    private final int width;
+    private final int height;
+    
+    private final int maxX;
+    private final int maxY;
+    
+    private Simulation simulation;
+    
+    // The Simulation's EntityStore
+    private final EntityStore store;
+    
+    // The entity's slot in the EntityStore, or -1 if it is not part of the game
+    private int slot = -1;
+    
+    // Index of the SpatialGrid cell this entity is stored in, or -1 if it is not in the grid.
+    private int gridCell = -1;
     
     // Creates a new Entity with the given fields. The court width and height are used to determine
     // the maximum possible x- and y-coordinates of the Entity.
-    Entity(int px, int py, int vx, int vy, int width, int height, int hp, Court court,
-            int courtWidth, int courtHeight) {
+    Entity(int kind, int px, int py, int vx, int vy, int width, int height, int hp,
+            Simulation simulation, int courtWidth, int courtHeight) {
+        this.kind = kind;
         this.px = px;
         this.py = py;
         this.vx = vx;
@@ -36,29 +58,113 @@ public abstract class Entity {
         this.width = width;
         this.height = height;
         this.hp = hp;
-        this.court = court;
+        this.simulation = simulation;
+        this.store = simulation.getEntityStore();
         this.maxX = courtWidth - width;
         this.maxY = courtHeight - height;
     }
     
     /*
-     * The following methods are getter/setter methods for certain private fields.
+     * Moves the entity's state into the Simulation's EntityStore. Called by the Simulation when the
+     * entity becomes part of the game. Its position at the start of the tick becomes its current
+     * position.
+     */
+    void attach() {
+        if (slot < 0) {
+            slot = store.add(this, kind, px, py, vx, vy, width, height, maxX, maxY, hp,
+                    initialized);
+        }
+    }
+    
+    /*
+     * Moves the entity's state out of the Simulation's EntityStore. Called by the Simulation when
+     * the entity is removed from the game.
+     */
+    void detach() {
+        if (slot >= 0) {
+            px = store.getPx(slot);
+            py = store.getPy(slot);
+            prevPx = store.getPrevPx(slot);
+            prevPy = store.getPrevPy(slot);
+            vx = store.getVx(slot);
+            vy = store.getVy(slot);
+            hp = store.getHP(slot);
+            initialized = store.isInitialized(slot);
+            store.remove(slot);
+            slot = -1;
+        }
+    }
+    
+    /*
+     * Returns the entity's slot in the EntityStore (its ID while it is part of the game), or -1 if
+     * it is not part of the game.
+     */
+    int getSlot() {
+        return slot;
+    }
+    
+    /*
+     * Returns the entity's kind: EntityStore.PLAYER for the player, or the archetype of an enemy.
+     */
+    int getKind() {
+        return kind;
+    }
+    
+    boolean isEnemy() {
+        return kind != EntityStore.PLAYER;
+    }
+    
+    /*
+     * The following methods are getter/setter methods for the entity's state, which read or change
+     * the EntityStore while the entity is part of the game.
      */
     
     public int getPx() {
-        return px;
+        return slot >= 0 ? store.getPx(slot) : px;
     }
     
     public int getPy() {
-        return py;
+        return slot >= 0 ? store.getPy(slot) : py;
     }
     
     public void setPx(int px) {
-        this.px = px;
+        if (slot >= 0) {
+            store.setPx(slot, px);
+        } else {
+            this.px = px;
+        }
+        simulation.getGrid().update(this);
     }
     
     public void setPy(int py) {
-        this.py = py;
+        if (slot >= 0) {
+            store.setPy(slot, py);
+        } else {
+            this.py = py;
+        }
+        simulation.getGrid().update(this);
+    }
+    
+    /*
+     * Remembers the entity's current position as its position at the start of the tick. The
+     * Simulation does this for every entity at once before each tick (see
+     * EntityStore.savePositions).
+     */
+    public void savePosition() {
+        if (slot >= 0) {
+            store.savePosition(slot);
+        } else {
+            prevPx = px;
+            prevPy = py;
+        }
+    }
+    
+    public int getPrevPx() {
+        return slot >= 0 ? store.getPrevPx(slot) : prevPx;
+    }
+    
+    public int getPrevPy() {
+        return slot >= 0 ? store.getPrevPy(slot) : prevPy;
     }
     
     public int getWidth() {
@@ -70,19 +176,27 @@ public abstract class Entity {
     }
     
     public int getVx() {
-        return vx;
+        return slot >= 0 ? store.getVx(slot) : vx;
     }
     
     public int getVy() {
-        return vy;
+        return slot >= 0 ? store.getVy(slot) : vy;
     }
     
     public void setVx(int vx) {
-        this.vx = vx;
+        if (slot >= 0) {
+            store.setVx(slot, vx);
+        } else {
+            this.vx = vx;
+        }
     }
     
     public void setVy(int vy) {
-        this.vy = vy;
+        if (slot >= 0) {
+            store.setVy(slot, vy);
+        } else {
+            this.vy = vy;
+        }
     }
     
     public int getMaxX() {
@@ -94,102 +208,50 @@ public abstract class Entity {
     }
     
     public int getHP() {
-        return hp;
+        return slot >= 0 ? store.getHP(slot) : hp;
     }
     
     public void setHP(int hp) {
-        this.hp = hp;
+        if (slot >= 0) {
+            store.setHP(slot, hp);
+        } else {
+            this.hp = hp;
+        }
     }
     
     public boolean getInitialized() {
-        return initialized;
+        return slot >= 0 ? store.isInitialized(slot) : initialized;
     }
     
     public void setInitialized(boolean b) {
-        initialized = b;
+        if (slot >= 0) {
+            store.setInitialized(slot, b);
+        } else {
+            initialized = b;
+        }
     }
     
-    /*
-     * Returns a reference to the court itself. Only used in subclasses.
-     */
-    protected Court getCourt() {
-        return court;
+    int getGridCell() {
+        return gridCell;
     }
     
-    /*
-     * Moves the entity. A set of all other entities in the game must be given so that the method
-     * can check whether the entity can move at all.
-     */
-    public void move(Set<Entity> entities) {
-        if (initialized) {
-            
-            // For an entity that is an enemy, calls the updateVelocity method to change the enemy's
-            // direction.
-            if (this instanceof Enemy) {
-                ((Enemy) this).updateVelocity();
-            }
-            
-            // Moves the entity.
-            px += vx;
-            py += vy;
-            
-            // Calls the clip and clipEntity methods to adjust the entity's position from its "raw"
-            // form. This prevents the entity from moving into a wall or another entity.
-            for (Entity that : entities) {
-                if (this != that && intersects(that)) {
-                    clip();
-                    clipEntity(that);
-                    that.clipEntity(this);
-                    clip();
-                    return;
-                }
-            }
-            
-            clip();
-        }
+    void setGridCell(int cell) {
+        gridCell = cell;
     }
     
     /*
-     * Adjusts the entity's position if if its "raw" position is out of bounds.
+     * Returns a reference to the simulation itself. Only used in subclasses.
      */
-    private void clip() {
-        if (px < 0 || px > maxX) {
-            px = Math.min(Math.max(0, px), maxX);
-        }
-        if (py < 0 || py > maxY) {
-            py = Math.min(Math.max(0, py), maxY);
-        }
+    protected Simulation getSimulation() {
+        return simulation;
     }
     
     /*
-     * Adjusts the entity's position if if its "raw" position conflicts with the position of another
-     * entity.
+     * Moves the entity, if it is part of the game (see EntityStore.move).
      */
-
-    private void clipEntity(Entity that) {
-        while (intersects(that)) {
-            if (vx > 0) {
-                this.px--;
-            } else if (vx < 0) {
-                this.px++;
-            } else {
-                if (that.vx > 0) {
-                    that.px--;
-                } else if (that.vx < 0) {
-                    that.px++;
-                } 
-            }
-            if (vy > 0) {
-                this.py--;
-            } else if (vy < 0) {
-                this.py++;
-            } else {
-                if (that.vy > 0) {
-                    that.py--;
-                } else if (that.vy < 0) {
-                    that.py++;
-                }
-            }
+    public void move() {
+        if (slot >= 0) {
+            store.move(slot);
         }
     }
     
@@ -197,10 +259,15 @@ public abstract class Entity {
      * Determines if the invoking entity's position conflicts with that of the argued entity.
      */
     public boolean intersects(Entity that) {
-        return (this.px + this.width > that.px
-            && this.py + this.height > that.py
-            && that.px + that.width > this.px 
-            && that.py + that.height > this.py);
+        int thisX = this.getPx();
+        int thisY = this.getPy();
+        int thatX = that.getPx();
+        int thatY = that.getPy();
+        
+        return (thisX + this.width > thatX
+            && thisY + this.height > thatY
+            && thatX + that.width > thisX 
+            && thatY + that.height > thisY);
     }
     
     /*
@@ -208,10 +275,10 @@ public abstract class Entity {
      * i.e. after one tick.
      */
     public boolean willIntersect(Entity that) {
-        int thisNextX = this.px + this.vx;
-        int thisNextY = this.py + this.vy;
-        int thatNextX = that.px + that.vx;
-        int thatNextY = that.py + that.vy;
+        int thisNextX = this.getPx() + this.getVx();
+        int thisNextY = this.getPy() + this.getVy();
+        int thatNextX = that.getPx() + that.getVx();
+        int thatNextY = that.getPy() + that.getVy();
     
         return (thisNextX + this.width > thatNextX
             && thisNextY + this.height > thatNextY
@@ -219,11 +286,6 @@ public abstract class Entity {
             && thatNextY + that.height > thisNextY);
     }
     
-    /*
-     * Draws the entity.
-     */
-    public abstract void draw(Graphics g);
-    
     /*
      * Causes the entity to attack.
      */
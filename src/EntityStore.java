@@ -0,0 +1,489 @@
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Holds the state of every entity in the game (the player and every placed enemy) in parallel
+ * primitive arrays, one per component: kind (PLAYER or the enemy's archetype), position, position
+ * at the start of the tick, velocity, planned velocity (see Enemy.plan), size, bounds, HP, and
+ * whether the entity is initialized. Passes over every entity, such as savePositions and
+ * moveEnemies, are plain loops over these arrays.
+ *
+ * Like the ProjectileStore, live entities are packed at the front of the arrays (indices 0 to
+ * size - 1), and an entity is removed by moving the last live entity into its place. Each entity is
+ * given a stable slot number (its ID) when it is added, which stays the same until it is removed;
+ * slots of removed entities are kept on a free list for reuse. An Entity is a handle that refers to
+ * its slot while it is part of the game (see Entity.attach and Entity.detach).
+ *
+ * The arrays grow (by doubling) when they are full, but are never shrunk, so once the game has
+ * reached its peak number of entities, adding entities does not allocate.
+ */
+public class EntityStore {
+
+    // Kind of the player. Every other kind is the archetype of an enemy (see Archetypes).
+    public static final int PLAYER = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Number of times a moving entity is pushed out of the entities around it before its move is
+    // given up on (see settle)
+    private static final int SETTLE_PASSES = 4;
+
+    private final Simulation simulation;
+
+    private int size = 0;
+
+    // Indexed by position in the packed arrays
+    private int[] kind;
+    private int[] px;
+    private int[] py;
+    private int[] prevPx;
+    private int[] prevPy;
+    private int[] vx;
+    private int[] vy;
+    private int[] plannedVx;
+    private int[] plannedVy;
+    private int[] width;
+    private int[] height;
+    private int[] maxX;
+    private int[] maxY;
+    private int[] hp;
+    private boolean[] initialized;
+    private Entity[] handleOf;
+    private int[] slotOf;
+
+    // Indexed by slot. indexOf is -1 for free slots.
+    private int[] indexOf;
+    private int[] freeSlots;
+    private int freeCount = 0;
+    private int slotCount = 0;
+
+    EntityStore(Simulation simulation) {
+        this.simulation = simulation;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        kind = new int[capacity];
+        px = new int[capacity];
+        py = new int[capacity];
+        prevPx = new int[capacity];
+        prevPy = new int[capacity];
+        vx = new int[capacity];
+        vy = new int[capacity];
+        plannedVx = new int[capacity];
+        plannedVy = new int[capacity];
+        width = new int[capacity];
+        height = new int[capacity];
+        maxX = new int[capacity];
+        maxY = new int[capacity];
+        hp = new int[capacity];
+        initialized = new boolean[capacity];
+        handleOf = new Entity[capacity];
+        slotOf = new int[capacity];
+        indexOf = new int[capacity];
+        freeSlots = new int[capacity];
+    }
+
+    /*
+     * Doubles the capacity of every array, keeping their contents.
+     */
+    private void grow() {
+        int capacity = 2 * px.length;
+        kind = Arrays.copyOf(kind, capacity);
+        px = Arrays.copyOf(px, capacity);
+        py = Arrays.copyOf(py, capacity);
+        prevPx = Arrays.copyOf(prevPx, capacity);
+        prevPy = Arrays.copyOf(prevPy, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        plannedVx = Arrays.copyOf(plannedVx, capacity);
+        plannedVy = Arrays.copyOf(plannedVy, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        hp = Arrays.copyOf(hp, capacity);
+        initialized = Arrays.copyOf(initialized, capacity);
+        handleOf = Arrays.copyOf(handleOf, capacity);
+        slotOf = Arrays.copyOf(slotOf, capacity);
+        indexOf = Arrays.copyOf(indexOf, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+
+    /*
+     * Makes room for at least the given number of entities in total, so that adding entities up to
+     * that number does not allocate.
+     */
+    public void ensureCapacity(int capacity) {
+        while (px.length < capacity) {
+            grow();
+        }
+    }
+
+    /*
+     * Adds an entity with the given components, referred to by the given handle, and returns its
+     * slot. Its position at the start of the tick is its current position, and its planned
+     * velocity is its current velocity.
+     */
+    public int add(Entity handle, int entityKind, int x, int y, int velocityX, int velocityY,
+            int w, int h, int boundX, int boundY, int health, boolean init) {
+        if (size == px.length) {
+            grow();
+        }
+
+        int slot;
+        if (freeCount > 0) {
+            freeCount--;
+            slot = freeSlots[freeCount];
+        } else {
+            slot = slotCount;
+            slotCount++;
+        }
+
+        int i = size;
+        size++;
+        kind[i] = entityKind;
+        px[i] = x;
+        py[i] = y;
+        prevPx[i] = x;
+        prevPy[i] = y;
+        vx[i] = velocityX;
+        vy[i] = velocityY;
+        plannedVx[i] = velocityX;
+        plannedVy[i] = velocityY;
+        width[i] = w;
+        height[i] = h;
+        maxX[i] = boundX;
+        maxY[i] = boundY;
+        hp[i] = health;
+        initialized[i] = init;
+        handleOf[i] = handle;
+        slotOf[i] = slot;
+        indexOf[slot] = i;
+        return slot;
+    }
+
+    /*
+     * Removes the entity in the given slot by moving the last entity into its place, and frees the
+     * slot.
+     */
+    public void remove(int slot) {
+        int i = indexOf[slot];
+        int last = size - 1;
+        if (i != last) {
+            kind[i] = kind[last];
+            px[i] = px[last];
+            py[i] = py[last];
+            prevPx[i] = prevPx[last];
+            prevPy[i] = prevPy[last];
+            vx[i] = vx[last];
+            vy[i] = vy[last];
+            plannedVx[i] = plannedVx[last];
+            plannedVy[i] = plannedVy[last];
+            width[i] = width[last];
+            height[i] = height[last];
+            maxX[i] = maxX[last];
+            maxY[i] = maxY[last];
+            hp[i] = hp[last];
+            initialized[i] = initialized[last];
+            handleOf[i] = handleOf[last];
+            slotOf[i] = slotOf[last];
+            indexOf[slotOf[i]] = i;
+        }
+        handleOf[last] = null;
+        size--;
+
+        indexOf[slot] = -1;
+        freeSlots[freeCount] = slot;
+        freeCount++;
+    }
+
+    /*
+     * Remembers every entity's current position as its position at the start of the tick.
+     */
+    public void savePositions() {
+        System.arraycopy(px, 0, prevPx, 0, size);
+        System.arraycopy(py, 0, prevPy, 0, size);
+    }
+
+    /*
+     * Remembers the current position of the entity in the given slot as its position at the start
+     * of the tick.
+     */
+    public void savePosition(int slot) {
+        int i = indexOf[slot];
+        prevPx[i] = px[i];
+        prevPy[i] = py[i];
+    }
+
+    /*
+     * Moves every initialized enemy, in order of their position in the arrays, after it takes on
+     * its planned velocity (see moveAt). The player is moved on its own (see move).
+     */
+    public void moveEnemies() {
+        for (int i = 0; i < size; i++) {
+            if (kind[i] != PLAYER && initialized[i]) {
+                vx[i] = plannedVx[i];
+                vy[i] = plannedVy[i];
+                moveAt(i);
+            }
+        }
+    }
+
+    /*
+     * Moves the entity in the given slot (see moveAt).
+     */
+    public void move(int slot) {
+        moveAt(indexOf[slot]);
+    }
+
+    /*
+     * Moves the (initialized) entity at index i by its velocity, then keeps it in bounds and out of
+     * walls and other entities. Only the entities near its path (as found by the simulation's
+     * SpatialGrid) are checked for collisions.
+     *
+     * Only the moving entity is adjusted, and it only ever ends up in a free position: if no free
+     * position can be found near where it was headed (see settle), it tries moving along each axis
+     * alone (when moving diagonally), and otherwise stays where it was. Since every entity is
+     * placed in a free position (see Enemy.spawn), no two entities ever overlap.
+     */
+    private void moveAt(int i) {
+        if (!initialized[i]) {
+            return;
+        }
+
+        int startX = px[i];
+        int startY = py[i];
+        int dx = vx[i];
+        int dy = vy[i];
+
+        // Every entity that the moving entity could touch, from anywhere that settle accepts.
+        SpatialGrid grid = simulation.getGrid();
+        List<Entity> nearby = grid.query(Math.min(startX, startX + dx) - width[i],
+                Math.min(startY, startY + dy) - height[i], Math.abs(dx) + 3 * width[i],
+                Math.abs(dy) + 3 * height[i]);
+
+        boolean diagonal = dx != 0 && dy != 0;
+        if (!settle(i, startX + dx, startY + dy, startX, startY, nearby)
+                && !(diagonal && settle(i, startX + dx, startY, startX, startY, nearby))
+                && !(diagonal && settle(i, startX, startY + dy, startX, startY, nearby))) {
+            px[i] = startX;
+            py[i] = startY;
+        }
+        grid.update(handleOf[i]);
+    }
+
+    /*
+     * Places the entity at index i at the given "raw" position, then pushes it out of each entity
+     * it overlaps (see separate) and keeps it in bounds and out of walls (see clip), for up to
+     * SETTLE_PASSES passes over the given nearby entities. Returns whether the entity ended up in a
+     * free position: in bounds, out of walls and other entities, and no farther than its own size
+     * from the box spanned by its start position (startX, startY) and the raw position, which is
+     * the area that the nearby entities cover.
+     */
+    private boolean settle(int i, int rawX, int rawY, int startX, int startY,
+            List<Entity> nearby) {
+        px[i] = rawX;
+        py[i] = rawY;
+        clip(i);
+        boolean free = false;
+        for (int pass = 0; pass < SETTLE_PASSES && !free; pass++) {
+            free = true;
+            for (int k = 0; k < nearby.size(); k++) {
+                int j = indexOf[nearby.get(k).getSlot()];
+                if (i != j && intersects(i, j)) {
+                    separate(i, j);
+                    free = false;
+                }
+            }
+            clip(i);
+        }
+        if (!free) {
+            return false;
+        }
+
+        // Clipping after the last pass may have moved the entity back into another one.
+        for (int k = 0; k < nearby.size(); k++) {
+            int j = indexOf[nearby.get(k).getSlot()];
+            if (i != j && intersects(i, j)) {
+                return false;
+            }
+        }
+        TileMap map = simulation.getMap();
+        return px[i] >= Math.min(startX, rawX) - width[i]
+                && px[i] <= Math.max(startX, rawX) + width[i]
+                && py[i] >= Math.min(startY, rawY) - height[i]
+                && py[i] <= Math.max(startY, rawY) + height[i]
+                && px[i] >= 0 && px[i] <= maxX[i] && py[i] >= 0 && py[i] <= maxY[i]
+                && (map == null || !map.boxHitsSolid(px[i], py[i], width[i], height[i]));
+    }
+
+    /*
+     * Adjusts the position of the entity at the given index if its "raw" position is out of
+     * bounds, or (if the game has a map) inside a wall. An entity inside a wall is moved back to
+     * where it was at the start of the tick along one axis if that is enough to get out of the
+     * wall, or along both otherwise.
+     */
+    private void clip(int i) {
+        if (px[i] < 0 || px[i] > maxX[i]) {
+            px[i] = Math.min(Math.max(0, px[i]), maxX[i]);
+        }
+        if (py[i] < 0 || py[i] > maxY[i]) {
+            py[i] = Math.min(Math.max(0, py[i]), maxY[i]);
+        }
+
+        TileMap map = simulation.getMap();
+        if (map != null && map.boxHitsSolid(px[i], py[i], width[i], height[i])) {
+            if (!map.boxHitsSolid(prevPx[i], py[i], width[i], height[i])) {
+                px[i] = prevPx[i];
+            } else if (!map.boxHitsSolid(px[i], prevPy[i], width[i], height[i])) {
+                py[i] = prevPy[i];
+            } else {
+                px[i] = prevPx[i];
+                py[i] = prevPy[i];
+            }
+        }
+    }
+
+    /*
+     * Moves the entity at index i out of the entity at index j (which stays where it is) by the
+     * shortest distance, in constant time, so that the two end up touching.
+     *
+     * Of the four ways out (left, right, up, and down), the shortest is taken. Between two ways out
+     * along an axis that are equally short (e.g. for two entities in the same place), the entity
+     * backs away from the direction it is moving in along that axis, or if it is not moving along
+     * it, goes the way given by the order of the two entities' slots, so that ties are always
+     * broken the same way. Between the two axes, the one the entity is moving along faster wins.
+     */
+    private void separate(int i, int j) {
+        int left = px[i] + width[i] - px[j];
+        int right = px[j] + width[j] - px[i];
+        int up = py[i] + height[i] - py[j];
+        int down = py[j] + height[j] - py[i];
+
+        int dx = (left < right || (left == right && tieBreak(vx[i], i, j) < 0)) ? -left : right;
+        int dy = (up < down || (up == down && tieBreak(vy[i], i, j) < 0)) ? -up : down;
+        if (Math.abs(dx) < Math.abs(dy)
+                || (Math.abs(dx) == Math.abs(dy) && Math.abs(vx[i]) >= Math.abs(vy[i]))) {
+            px[i] += dx;
+        } else {
+            py[i] += dy;
+        }
+    }
+
+    /*
+     * Returns the direction (-1 or 1) in which the entity at index i leaves the entity at index j
+     * along an axis on which both ways out are equally short, given its velocity along the axis.
+     */
+    private int tieBreak(int velocity, int i, int j) {
+        if (velocity != 0) {
+            return -Integer.signum(velocity);
+        }
+        return slotOf[i] < slotOf[j] ? -1 : 1;
+    }
+
+    /*
+     * Returns the number of pairs of entities that overlap. Since entities only ever move into free
+     * positions (see move), this is always 0; it is used to check that.
+     */
+    public int countOverlaps() {
+        SpatialGrid grid = simulation.getGrid();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            List<Entity> nearby = grid.query(px[i], py[i], width[i], height[i]);
+            for (int k = 0; k < nearby.size(); k++) {
+                int j = indexOf[nearby.get(k).getSlot()];
+                if (j > i && intersects(i, j)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private boolean intersects(int i, int j) {
+        return px[i] + width[i] > px[j]
+                && py[i] + height[i] > py[j]
+                && px[j] + width[j] > px[i]
+                && py[j] + height[j] > py[i];
+    }
+
+    /*
+     * The following methods read or change a single component of the entity in a given slot. They
+     * are used by Entity handles.
+     */
+
+    public int size() {
+        return size;
+    }
+
+    public int getPx(int slot) {
+        return px[indexOf[slot]];
+    }
+
+    public void setPx(int slot, int value) {
+        px[indexOf[slot]] = value;
+    }
+
+    public int getPy(int slot) {
+        return py[indexOf[slot]];
+    }
+
+    public void setPy(int slot, int value) {
+        py[indexOf[slot]] = value;
+    }
+
+    public int getPrevPx(int slot) {
+        return prevPx[indexOf[slot]];
+    }
+
+    public int getPrevPy(int slot) {
+        return prevPy[indexOf[slot]];
+    }
+
+    public int getVx(int slot) {
+        return vx[indexOf[slot]];
+    }
+
+    public void setVx(int slot, int value) {
+        vx[indexOf[slot]] = value;
+    }
+
+    public int getVy(int slot) {
+        return vy[indexOf[slot]];
+    }
+
+    public void setVy(int slot, int value) {
+        vy[indexOf[slot]] = value;
+    }
+
+    public int getPlannedVx(int slot) {
+        return plannedVx[indexOf[slot]];
+    }
+
+    public int getPlannedVy(int slot) {
+        return plannedVy[indexOf[slot]];
+    }
+
+    public void setPlannedVelocity(int slot, int velocityX, int velocityY) {
+        int i = indexOf[slot];
+        plannedVx[i] = velocityX;
+        plannedVy[i] = velocityY;
+    }
+
+    public int getHP(int slot) {
+        return hp[indexOf[slot]];
+    }
+
+    public void setHP(int slot, int value) {
+        hp[indexOf[slot]] = value;
+    }
+
+    public boolean isInitialized(int slot) {
+        return initialized[indexOf[slot]];
+    }
+
+    public void setInitialized(int slot, boolean value) {
+        initialized[indexOf[slot]] = value;
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+/*
+ * Tells every enemy which way to go to reach the player by the shortest path around the walls of
+ * the map, so that enemies do not each have to search for a path.
+ *
+ * The world is divided into square cells of CELL_SIZE pixels. Whenever the player enters a new
+ * cell, a breadth-first search from the player's cell finds, for every cell within RADIUS cells of
+ * it, the number of steps to the player and the direction of the first step (to one of the eight
+ * neighboring cells). Looking up the direction for an enemy is then a single array access, no
+ * matter how many enemies there are.
+ *
+ * A cell is blocked if it overlaps a wall or lies outside of the world. A diagonal step is only
+ * allowed if both cells next to it are free, so that paths never cut the corner of a wall.
+ *
+ * Directions are numbered 0 to 7, where direction d points at an angle of d * 45 degrees (i.e.
+ * 0 is right, 2 is down, 4 is left, and 6 is up).
+ */
+public class FlowField {
+
+    public static final int CELL_SIZE = Enemy.SIZE;
+    public static final int RADIUS = 40;
+
+    // Returned for cells that are outside of the field or cannot reach the player
+    public static final int NONE = -1;
+
+    private static final int[] DX = new int[] {1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] DY = new int[] {0, 1, 1, 1, 0, -1, -1, -1};
+
+    private static final byte UNKNOWN = 0;
+    private static final byte FREE = 1;
+    private static final byte BLOCKED = 2;
+
+    private final Simulation simulation;
+    private final int size = 2 * RADIUS + 1;
+
+    // Indexed by row * size + column, relative to the top-left cell of the field
+    private final int[] distance = new int[size * size];
+    private final byte[] direction = new byte[size * size];
+    private final byte[] state = new byte[size * size];
+    private final int[] queue = new int[size * size];
+
+    // World column and row of the top-left cell of the field, and of the player's cell
+    private int left;
+    private int top;
+    private int playerColumn = Integer.MIN_VALUE;
+    private int playerRow = Integer.MIN_VALUE;
+
+    FlowField(Simulation simulation) {
+        this.simulation = simulation;
+    }
+
+    /*
+     * Recomputes the field if the given point (the center of the player) is in a different cell
+     * than the last time.
+     */
+    public void update(int x, int y) {
+        int column = Math.floorDiv(x, CELL_SIZE);
+        int row = Math.floorDiv(y, CELL_SIZE);
+        if (column != playerColumn || row != playerRow) {
+            playerColumn = column;
+            playerRow = row;
+            recompute();
+        }
+    }
+
+    /*
+     * Runs the breadth-first search from the player's cell.
+     */
+    private void recompute() {
+        left = playerColumn - RADIUS;
+        top = playerRow - RADIUS;
+        Arrays.fill(distance, -1);
+        Arrays.fill(direction, (byte) NONE);
+        Arrays.fill(state, UNKNOWN);
+
+        int start = RADIUS * size + RADIUS;
+        distance[start] = 0;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int cell = queue[head++];
+            int column = cell % size;
+            int row = cell / size;
+            for (int d = 0; d < DX.length; d++) {
+                int c = column + DX[d];
+                int r = row + DY[d];
+                if (c < 0 || r < 0 || c >= size || r >= size) {
+                    continue;
+                }
+                int next = r * size + c;
+                if (distance[next] >= 0 || isBlocked(c, r)) {
+                    continue;
+                }
+                if (DX[d] != 0 && DY[d] != 0
+                        && (isBlocked(column + DX[d], row) || isBlocked(column, row + DY[d]))) {
+                    continue;
+                }
+                distance[next] = distance[cell] + 1;
+                // The first step from the new cell goes back the way the search came.
+                direction[next] = (byte) ((d + DX.length / 2) % DX.length);
+                queue[tail++] = next;
+            }
+        }
+    }
+
+    /*
+     * Determines if the cell in the given column and row of the field is blocked, checking the map
+     * the first time each cell is looked at.
+     */
+    private boolean isBlocked(int c, int r) {
+        int cell = r * size + c;
+        if (state[cell] == UNKNOWN) {
+            int x = (left + c) * CELL_SIZE;
+            int y = (top + r) * CELL_SIZE;
+            TileMap map = simulation.getMap();
+            boolean blocked = x < 0 || y < 0 || x >= simulation.getWidth()
+                    || y >= simulation.getHeight()
+                    || (map != null && map.boxHitsSolid(x, y, CELL_SIZE, CELL_SIZE));
+            state[cell] = blocked ? BLOCKED : FREE;
+        }
+        return state[cell] == BLOCKED;
+    }
+
+    /*
+     * Returns the direction (0 to 7) of the first step from the cell containing the given point
+     * toward the player, or NONE if the point is outside of the field, in the player's cell, or
+     * cannot reach the player.
+     */
+    public int directionAt(int x, int y) {
+        int cell = cellAt(x, y);
+        return cell < 0 ? NONE : direction[cell];
+    }
+
+    /*
+     * Returns the number of steps from the cell containing the given point to the player's cell,
+     * or NONE if the point is outside of the field or cannot reach the player.
+     */
+    public int distanceAt(int x, int y) {
+        int cell = cellAt(x, y);
+        return cell < 0 ? NONE : distance[cell];
+    }
+
+    private int cellAt(int x, int y) {
+        int c = Math.floorDiv(x, CELL_SIZE) - left;
+        int r = Math.floorDiv(y, CELL_SIZE) - top;
+        if (c < 0 || r < 0 || c >= size || r >= size) {
+            return -1;
+        }
+        return r * size + c;
+    }
+}
@@ -55,9 +55,17 @@ public class Game implements Runnable {
     }
     
     /*
-     * Invokes the Game constructor to begin the game.
+     * Loads the enemy archetypes and waves (see Archetypes and WaveScript), then invokes the Game
+     * constructor to begin the game. The game does not start if either file is not valid.
      */
     public static void main(String[] args) {
+        try {
+            Archetypes.getDefault();
+            WaveScript.getDefault();
+        } catch (IllegalStateException e) {
+            System.out.println("There was an error loading the game files: " + e.getMessage());
+            return;
+        }
         SwingUtilities.invokeLater(new Game());
     }
 }
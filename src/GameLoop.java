@@ -0,0 +1,96 @@
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Drives a Court from a dedicated thread, so that neither painting nor anything else on the Swing
+ * event dispatch thread can delay the game.
+ *
+ * The loop uses a fixed timestep. Real time is added to an accumulator, and the Court's game state
+ * is advanced by one tick for every TICK_INTERVAL milliseconds in it. Between ticks, the loop asks
+ * the Court to render a frame once per display refresh, passing how far (from 0 to 1) real time is
+ * between the last tick and the next one, so that positions can be interpolated. The speed of the
+ * game therefore depends only on TICK_INTERVAL, never on how long painting takes.
+ */
+public class GameLoop implements Runnable {
+
+    private static final long NANOS_PER_TICK = Simulation.TICK_INTERVAL * 1000000L;
+    private static final int DEFAULT_REFRESH_RATE = 60;
+
+    // If the loop falls further behind than this (e.g. after the computer sleeps), the missed time
+    // is dropped instead of being simulated all at once.
+    private static final long MAX_ACCUMULATED_NANOS = 10 * NANOS_PER_TICK;
+
+    private final Court court;
+    private final long nanosPerFrame;
+    private final Thread thread;
+
+    private volatile boolean running = false;
+
+    /*
+     * Creates a loop for the given Court. The loop does not run until start() is called.
+     */
+    GameLoop(Court court) {
+        this.court = court;
+        this.nanosPerFrame = 1000000000L / getRefreshRate();
+        this.thread = new Thread(this, "Game loop");
+        thread.setDaemon(true);
+    }
+
+    /*
+     * Returns the refresh rate of the screen (in Hz), or DEFAULT_REFRESH_RATE if it is unknown.
+     */
+    private static int getRefreshRate() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return DEFAULT_REFRESH_RATE;
+        }
+        DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDisplayMode();
+        int rate = mode.getRefreshRate();
+        if (rate == DisplayMode.REFRESH_RATE_UNKNOWN) {
+            return DEFAULT_REFRESH_RATE;
+        }
+        return rate;
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /*
+     * Stops the loop. The current tick or frame (if any) is finished first.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+
+        while (running) {
+            long now = System.nanoTime();
+            accumulator = Math.min(accumulator + now - previous, MAX_ACCUMULATED_NANOS);
+            previous = now;
+
+            if (court.getPlaying()) {
+                while (accumulator >= NANOS_PER_TICK) {
+                    court.tick();
+                    accumulator -= NANOS_PER_TICK;
+                }
+            } else {
+                accumulator = 0;
+            }
+
+            court.render((double) accumulator / NANOS_PER_TICK);
+
+            long next = now + nanosPerFrame;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+}
@@ -73,14 +73,4 @@ public class GameOver extends Page {
         Game.removeCard(this);
         Game.removeCard(play);
     }
-    
-    /*
-     * Repaints the score and level labels.
-     */
-    @Override
-    public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        scoreLabel.setText("Score: " + play.getScore());
-        levelLabel.setText("Level: " + play.getLevel());
-    }
 }
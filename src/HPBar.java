@@ -1,12 +1,14 @@
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.util.function.IntConsumer;
 
 import javax.swing.BorderFactory;
 import javax.swing.JComponent;
 
 /*
- * Contains the HP bar. Used in the Play page.
+ * Contains the HP bar. Used in the Play page. The bar is only repainted when the player's HP
+ * changes.
  */
 @SuppressWarnings("serial")
 public class HPBar extends JComponent {
@@ -22,6 +24,11 @@ public class HPBar extends JComponent {
         this.court = court;
         setPreferredSize(new Dimension(BAR_WIDTH, BAR_HEIGHT));
         setBorder(BorderFactory.createLineBorder(Color.BLACK));
+        court.getPlayerHPValue().addListener(new IntConsumer() {
+            public void accept(int hp) {
+                repaint();
+            }
+        });
     }
     
     /*
@@ -34,7 +41,7 @@ public class HPBar extends JComponent {
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
         
-        int cutoff = BAR_WIDTH * court.getPlayerCopy().getHP() / Player.HP;
+        int cutoff = BAR_WIDTH * court.getPlayerHP() / Player.HP;
         
         g.setColor(Color.PINK);
         g.fillRect(0, 0, BAR_WIDTH, BAR_HEIGHT);
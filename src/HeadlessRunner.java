@@ -0,0 +1,231 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Runs the game without any user interface, as fast as the CPU allows. Used for balance and soak
+ * testing.
+ *
+ * The player stands still and shoots at an enemy every SHOT_INTERVAL ticks. Whenever a game ends,
+ * a new Simulation is started, so any number of ticks can be run. At the end, the number of games
+ * played, the best score reached, and the tick rate are printed.
+ *
+ * Each game's Simulation is seeded from one generator, whose seed is printed at the end. Running
+ * again with that seed plays exactly the same games, which makes results comparable between runs.
+ *
+ * The runner also checks that steady-state ticks do not allocate. After WARMUP_TICKS, the bytes
+ * allocated by each tick (including the player's shot) are measured, and any tick that allocated
+ * is counted. Ticks that start a new wave are not counted, since they create the wave's enemies.
+ *
+ * The first time the JIT compiler is asked to fully optimize a method of a class, it interns the
+ * string constants of the class on the thread that asked, which would be counted against whatever
+ * tick that happens in. The game's own classes keep their strings in constants, which are interned
+ * when the class is loaded, so before the first tick the runner warms up the library methods that
+ * ticks and the measurement itself call (see warmUpLibraries).
+ *
+ * It also checks that no two entities overlap after any tick. If any tick allocated or any
+ * entities overlapped, the run fails (exits with status 1) after printing its results.
+ *
+ * The ticks given are played in the world given by the system properties (see Simulation), and
+ * then LARGE_MAP_TICKS more, with the same checks, on a large map written by MapGenerator. There,
+ * the SpatialGrid and the TileMap page, and waves grow large enough to be planned in parallel, so
+ * the run also fails if any of those allocate.
+ *
+ * Usage: java HeadlessRunner [ticks [seed]]
+ */
+public class HeadlessRunner {
+
+    private static final long DEFAULT_TICKS = 1000000;
+    private static final long WARMUP_TICKS = 20000;
+    private static final int SHOT_INTERVAL = 10;
+
+    // Number of ticks played on the large map, and its width and height in chunks
+    private static final long LARGE_MAP_TICKS = 100000;
+    private static final int LARGE_MAP_CHUNKS = 200;
+
+    // Number of calls made to each library method by warmUpLibraries
+    private static final int WARMUP_CALLS = 1000000;
+
+    public static void main(String[] args) {
+        try {
+            Archetypes.getDefault();
+            WaveScript.getDefault();
+        } catch (IllegalStateException e) {
+            System.out.println("There was an error loading the game files: " + e.getMessage());
+            return;
+        }
+
+        long ticks = DEFAULT_TICKS;
+        if (args.length > 0) {
+            ticks = Long.parseLong(args[0]);
+        }
+        long seed = new SplittableRandom().nextLong();
+        if (args.length > 1) {
+            seed = Long.parseLong(args[1]);
+        }
+        SplittableRandom seeds = new SplittableRandom(seed);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        warmUpLibraries(threads);
+
+        Run run = new Run(threads, null, ticks, seeds);
+
+        TileMap map;
+        try {
+            File file = File.createTempFile("large", ".map");
+            file.deleteOnExit();
+            MapGenerator.write(file.getPath(), LARGE_MAP_CHUNKS, LARGE_MAP_CHUNKS,
+                    new Random(seeds.nextLong()));
+            map = TileMap.open(file.toPath());
+        } catch (IOException e) {
+            System.out.println("There was an error writing the large map: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Run large = new Run(threads, map, LARGE_MAP_TICKS, seeds);
+
+        System.out.println("Seed: " + seed);
+        run.print();
+        System.out.println();
+        System.out.println("Large map (" + map.getWidth() + " x " + map.getHeight() + "):");
+        large.print();
+        if (run.failed() || large.failed()) {
+            System.exit(1);
+        }
+    }
+
+    /*
+     * Plays a number of ticks, with new games started from the given generator of seeds, and keeps
+     * the results and the checks of steady-state ticks.
+     */
+    private static class Run {
+        private final long ticks;
+        private int games = 1;
+        private int bestScore = 0;
+        private long allocatingTicks = 0;
+        private long allocatedBytes = 0;
+        private long overlappingTicks = 0;
+        private final long elapsed;
+
+        /*
+         * Plays the given number of ticks in the world with the given map, or in the world given
+         * by the system properties if the map is null.
+         */
+        Run(com.sun.management.ThreadMXBean threads, TileMap map, long ticks,
+                SplittableRandom seeds) {
+            this.ticks = ticks;
+            Simulation simulation = newSimulation(map, seeds.nextLong());
+
+            long start = System.nanoTime();
+            for (long t = 0; t < ticks; t++) {
+                int level = simulation.getLevel();
+                int wave = simulation.getWave();
+                long before = threads.getCurrentThreadAllocatedBytes();
+
+                if (t % SHOT_INTERVAL == 0) {
+                    shootAtAnEnemy(simulation);
+                }
+                simulation.tick();
+
+                long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+                boolean newWave = level != simulation.getLevel() || wave != simulation.getWave();
+                if (t >= WARMUP_TICKS && allocated > 0 && !newWave) {
+                    allocatingTicks++;
+                    allocatedBytes += allocated;
+                }
+                if (simulation.countOverlaps() > 0) {
+                    overlappingTicks++;
+                }
+
+                if (simulation.isOver()) {
+                    bestScore = Math.max(bestScore, simulation.getScore());
+                    simulation = newSimulation(map, seeds.nextLong());
+                    games++;
+                }
+            }
+            elapsed = System.nanoTime() - start;
+            bestScore = Math.max(bestScore, simulation.getScore());
+        }
+
+        private static Simulation newSimulation(TileMap map, long seed) {
+            if (map == null) {
+                return new Simulation(seed);
+            }
+            return new Simulation(map.getWidth(), map.getHeight(), map.copy(), seed);
+        }
+
+        void print() {
+            System.out.println("Ticks: " + ticks);
+            System.out.println("Games: " + games);
+            System.out.println("Best score: " + bestScore);
+            System.out.println("Ticks per second: " + (long) (ticks / (elapsed / 1e9)));
+            System.out.println("Steady-state ticks that allocated: " + allocatingTicks
+                    + " (" + allocatedBytes + " bytes)");
+            System.out.println("Ticks after which entities overlapped: " + overlappingTicks);
+        }
+
+        boolean failed() {
+            return allocatingTicks > 0 || overlappingTicks > 0;
+        }
+    }
+
+    /*
+     * Calls the library methods used by ticks (bounded random numbers, integer math, lists, reads
+     * of the map file, and parallel planning) and by the measurement of allocation until the JIT
+     * compiler has had them fully optimized, so that it does not intern the strings of their
+     * classes during a measured tick.
+     */
+    private static void warmUpLibraries(com.sun.management.ThreadMXBean threads) {
+        SplittableRandom random = new SplittableRandom();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SHOT_INTERVAL);
+        List<Integer> list = new ArrayList<>(Collections.nCopies(SHOT_INTERVAL, 0));
+        RecursiveAction task = new RecursiveAction() {
+            @Override
+            protected void compute() {
+            }
+        };
+        long sum = 0;
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            sum += threads.getCurrentThreadAllocatedBytes();
+            sum += random.nextInt(0, SHOT_INTERVAL);
+            sum += (long) random.nextDouble();
+            sum += buffer.get(i % SHOT_INTERVAL);
+            sum += list.set(i % SHOT_INTERVAL, list.get((i + 1) % SHOT_INTERVAL));
+            sum += Math.min(Math.floorDiv(i, SHOT_INTERVAL), i) + Integer.signum(i);
+            task.reinitialize();
+            ForkJoinPool.commonPool().execute(task);
+            if (task.tryUnfork()) {
+                task.invoke();
+            }
+            while (!task.isDone()) {
+                Thread.yield();
+            }
+        }
+        // Uses the sum, so that the calls cannot be optimized away
+        if (sum == 0) {
+            System.out.println("The allocation counter is not working.");
+        }
+    }
+
+    /*
+     * Makes the player shoot towards the center of some initialized enemy, if there is one.
+     */
+    private static void shootAtAnEnemy(Simulation simulation) {
+        for (int i = 0; i < simulation.enemies().size(); i++) {
+            Enemy e = simulation.enemies().get(i);
+            if (e.getInitialized()) {
+                simulation.playerShoot(e.getPx() + e.getWidth() / 2, e.getPy() + e.getHeight() / 2);
+                return;
+            }
+        }
+    }
+}
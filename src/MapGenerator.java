@@ -0,0 +1,102 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Writes a map file (see TileMap) with randomly placed rectangular walls. The tiles within
+ * CLEAR_TILES tiles of the center of the map, where the player starts, are left empty. Chunks are
+ * generated and written one at a time, so maps of any size can be generated without using much
+ * memory.
+ *
+ * Usage: java MapGenerator file widthInChunks heightInChunks [seed]
+ */
+public class MapGenerator {
+
+    private static final int TILE_SIZE = 16;
+    private static final int CHUNK_TILES = 32;
+    private static final int WALLS_PER_CHUNK = 6;
+    private static final int MAX_WALL_TILES = 5;
+    private static final int CLEAR_TILES = 4;
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: java MapGenerator file widthInChunks heightInChunks [seed]");
+            return;
+        }
+        int widthInChunks = Integer.parseInt(args[1]);
+        int heightInChunks = Integer.parseInt(args[2]);
+        Random random = new Random();
+        if (args.length > 3) {
+            random = new Random(Long.parseLong(args[3]));
+        }
+
+        try {
+            write(args[0], widthInChunks, heightInChunks, random);
+        } catch (IOException e) {
+            System.out.println("There was an error writing the map file.");
+        }
+    }
+
+    /*
+     * Writes a map of the given size (in chunks), with walls placed by the given generator, to the
+     * file at the given path. Also used by HeadlessRunner to check the game on a large map.
+     */
+    static void write(String path, int widthInChunks, int heightInChunks, Random random)
+            throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(TileMap.MAGIC);
+            out.writeInt(TileMap.VERSION);
+            out.writeInt(TILE_SIZE);
+            out.writeInt(CHUNK_TILES);
+            out.writeInt(widthInChunks);
+            out.writeInt(heightInChunks);
+
+            byte[] chunk = new byte[CHUNK_TILES * CHUNK_TILES];
+            for (int row = 0; row < heightInChunks; row++) {
+                for (int column = 0; column < widthInChunks; column++) {
+                    Arrays.fill(chunk, (byte) 0);
+                    addWalls(chunk, random);
+                    clearCenter(chunk, column * CHUNK_TILES, row * CHUNK_TILES,
+                            widthInChunks * CHUNK_TILES / 2, heightInChunks * CHUNK_TILES / 2);
+                    out.write(chunk);
+                }
+            }
+        }
+    }
+
+    /*
+     * Marks WALLS_PER_CHUNK randomly sized and placed rectangles of the chunk as solid.
+     */
+    private static void addWalls(byte[] chunk, Random random) {
+        for (int i = 0; i < WALLS_PER_CHUNK; i++) {
+            int w = 1 + random.nextInt(MAX_WALL_TILES);
+            int h = 1 + random.nextInt(MAX_WALL_TILES);
+            int left = random.nextInt(CHUNK_TILES - w + 1);
+            int top = random.nextInt(CHUNK_TILES - h + 1);
+            for (int y = top; y < top + h; y++) {
+                for (int x = left; x < left + w; x++) {
+                    chunk[y * CHUNK_TILES + x] = 1;
+                }
+            }
+        }
+    }
+
+    /*
+     * Empties every tile of the chunk (whose top-left tile is at (left, top)) that is within
+     * CLEAR_TILES tiles of the center tile of the map, at (centerX, centerY).
+     */
+    private static void clearCenter(byte[] chunk, int left, int top, int centerX, int centerY) {
+        for (int y = 0; y < CHUNK_TILES; y++) {
+            for (int x = 0; x < CHUNK_TILES; x++) {
+                if (Math.abs(left + x - centerX) <= CLEAR_TILES
+                        && Math.abs(top + y - centerY) <= CLEAR_TILES) {
+                    chunk[y * CHUNK_TILES + x] = 0;
+                }
+            }
+        }
+    }
+}
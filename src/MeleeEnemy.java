@@ -1,26 +1,29 @@
-import java.awt.Color;
-import java.awt.Graphics;
+import java.util.SplittableRandom;
 
 /*
- * Describes a melee enemy, one of the two kinds of enemies in the game. A melee enemy can only
- * attack the player when adjacent to it and therefore always moves (i.e. updates velocity) in the
- * player's direction.
+ * Describes a melee enemy, which follows the behavior of every archetype whose behavior is "melee"
+ * (see Archetypes). A melee enemy can only attack the player when adjacent to it and therefore
+ * always moves (i.e. updates velocity) toward the player, following the Simulation's FlowField
+ * around any walls in the way. Its speed and the time between its attacks are given by its
+ * archetype.
  */
 public class MeleeEnemy extends Enemy {
-    
-    private static final Color MELEE_COLOR = Color.RED;
-    
-    public static final int MELEE_SPEED = 10;
-    public static final int TICKS_PER_ATTACK = 10;
 
     private int damage;
-    private int attackStage;
     
     /*
-     * Creates a new MeleeEnemy with the given damage.
+     * Creates a new MeleeEnemy of the given archetype with the given damage.
+     */
+    MeleeEnemy(Simulation simulation, int archetype, int damage) {
+        this(simulation, archetype, damage, simulation.newRandom());
+    }
+
+    /*
+     * Creates a new MeleeEnemy of the given archetype with the given damage and random number
+     * generator (see WavePlan).
      */
-    MeleeEnemy(Court court, int damage) {
-        super(court);
+    MeleeEnemy(Simulation simulation, int archetype, int damage, SplittableRandom random) {
+        super(simulation, archetype, random);
 
         this.damage = damage;
     }
@@ -29,80 +32,72 @@ public class MeleeEnemy extends Enemy {
      * Creates a copy of the invoking MeleeEnemy.
      */
     public MeleeEnemy clone() {
-        MeleeEnemy clone = new MeleeEnemy(this.getCourt(), damage);
+        MeleeEnemy clone = new MeleeEnemy(this.getSimulation(), this.getArchetype(), damage);
         clone.setPx(this.getPx());
         clone.setPy(this.getPy());
         return clone;
     }
     
     /*
-     * Draws the melee enemy as a red square. Note that, during the process of initialization,
-     * the color is initially clear and becomes more opaque over the course of initialization,
-     * creating a fade-in effect.
-     */
-    @Override
-    public void draw(Graphics g) {
-        if (this.getInitialized()) {
-            g.setColor(MELEE_COLOR);
-        } else {
-            int red = MELEE_COLOR.getRed();
-            int green = MELEE_COLOR.getGreen();
-            int blue = MELEE_COLOR.getBlue();
-            int alpha = (int) ((float) getInitStage() / Enemy.TICKS_TO_INITIALIZE * 255);
-            g.setColor(new Color(red, green, blue, alpha));
-        }
-        
-        g.fillRect(this.getPx(), this.getPy(), this.getWidth(), this.getHeight());
-    }
-    
-    /*
-     * Attacks the player if the invoking melee enemy is at the appropriate attack stage (and is
-     * adjacent to the player). In this case, TICKS_PER_ATTACK is set to 10, so a melee enemy 
-     * attacks once every 10 ticks.
+     * Attacks the player if the invoking melee enemy is adjacent to it. Called whenever the melee
+     * enemy's attack timer fires, i.e. every TicksPerAttack ticks of its archetype.
      */
     @Override
     public void attack() {
-        attackStage++;
-        if (attackStage >= TICKS_PER_ATTACK) {
-            attackStage = 0;
-            Court court = this.getCourt();
-            Player p = court.getPlayerCopy();
-            if (isAdjacentX(p) || isAdjacentY(p)) {
-                court.setPlayerHP(Math.max(court.getPlayerCopy().getHP() - damage, 0));
-            }
+        Simulation simulation = this.getSimulation();
+        PlayerView p = simulation.getPlayerView();
+        if (isAdjacentX(p) || isAdjacentY(p)) {
+            simulation.damagePlayer(damage);
         }
     }
+
     
     /*
-     * Updates the melee enemy's velocity so that it always moves in the direction of the player.
-     * If the melee enemy is already adjacent to the player, then it will not move at all.
+     * Updates the melee enemy's velocity so that it always moves toward the player. The direction
+     * is read from the flow field, except close to the player (or where the field gives no
+     * direction), where the melee enemy heads straight at the player. The melee enemy then steers
+     * around the enemies near it (see Enemy.steer). If the melee enemy is already adjacent to the
+     * player, then it will not move at all.
      */
     @Override
     public void updateVelocity() {
-        Player p = this.getCourt().getPlayerCopy();
+        PlayerView p = this.getSimulation().getPlayerView();
+        FlowField field = this.getSimulation().getFlowField();
+        Archetypes archetypes = this.getSimulation().getArchetypes();
+        int archetype = this.getArchetype();
+        
+        int centerX = this.getPx() + this.getWidth() / 2;
+        int centerY = this.getPy() + this.getHeight() / 2;
+        int step = field.directionAt(centerX, centerY);
+        if (step != FlowField.NONE && field.distanceAt(centerX, centerY) > 1) {
+            setPlannedVelocity(archetypes.getStepVx(archetype, step),
+                    archetypes.getStepVy(archetype, step));
+        } else {
+            int speed = archetypes.getSpeed(archetype);
+            double direction = Math.atan2(p.getPy() - this.getPy(), p.getPx() - this.getPx());
+            setPlannedVelocity((int) (Math.cos(direction) * speed),
+                    (int) (Math.sin(direction) * speed));
+        }
         
-        double direction = Math.atan2(p.getPy() - this.getPy(), p.getPx() - this.getPx());
-        setVx((int) (Math.cos(direction) * MELEE_SPEED));
-        setVy((int) (Math.sin(direction) * MELEE_SPEED));
+        steer();
         
         if (isAdjacentX(p) || isAdjacentY(p)) {
-            setVx(0);
-            setVy(0);
+            setPlannedVelocity(0, 0);
         }
     }
     
     /*
-     * The following two methods determine adjacency in the x- and y-directions.
+     * The following two methods determine adjacency (to the player) in the x- and y-directions.
      */
     
-    private boolean isAdjacentX(Entity that) {
+    private boolean isAdjacentX(PlayerView that) {
         return ((that.getPx() + that.getWidth() == this.getPx() || 
                 this.getPx() + this.getWidth() == that.getPx()) &&
                 this.getPy() < that.getPy() + that.getHeight() && 
                 that.getPy() < this.getPy() + this.getHeight());
     }
     
-    private boolean isAdjacentY(Entity that) {
+    private boolean isAdjacentY(PlayerView that) {
         return ((that.getPy() + that.getHeight() == this.getPy() || 
                 this.getPy() + this.getHeight() == that.getPy()) &&
                 this.getPx() < that.getPx() + that.getWidth() && 
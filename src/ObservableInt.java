@@ -0,0 +1,43 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/*
+ * An int value that notifies its listeners whenever it changes. Used for the game statistics shown
+ * by the Play and Pause pages, so that labels are only updated when what they show has actually
+ * changed.
+ *
+ * Values are set, and listeners are called, on the Swing event dispatch thread only.
+ */
+public class ObservableInt {
+
+    private int value;
+    private final List<IntConsumer> listeners = new ArrayList<>();
+
+    ObservableInt(int value) {
+        this.value = value;
+    }
+
+    public int get() {
+        return value;
+    }
+
+    /*
+     * Changes the value and notifies every listener. Does nothing if the value is unchanged.
+     */
+    public void set(int newValue) {
+        if (newValue != value) {
+            value = newValue;
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).accept(newValue);
+            }
+        }
+    }
+
+    /*
+     * Adds a listener, which is called with the new value whenever the value changes.
+     */
+    public void addListener(IntConsumer listener) {
+        listeners.add(listener);
+    }
+}
@@ -1,11 +1,15 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.util.function.IntConsumer;
 import javax.swing.*;
 
 /*
  * Page that is displayed when the pause button (see Play) is clicked. Shows the current score and
  * level, and includes buttons for resuming, restarting, or returning to the main menu (which quits
  * the current game).
+ * 
+ * The score and level labels listen to the Play page's statistics, so they are up to date whenever
+ * the game is paused.
  */
 @SuppressWarnings("serial")
 public class Pause extends Page {  
@@ -30,6 +34,16 @@ public class Pause extends Page {
         levelLabel = gameState.makeLabel("Level: " + play.getLevel(), FONT_SIZE_MEDIUM, null, 
                 SwingConstants.CENTER);
         add(gameState);
+        play.getScoreValue().addListener(new IntConsumer() {
+            public void accept(int score) {
+                scoreLabel.setText("Score: " + score);
+            }
+        });
+        play.getLevelValue().addListener(new IntConsumer() {
+            public void accept(int level) {
+                levelLabel.setText("Level: " + level);
+            }
+        });
         
         JButton resume = makeButton("Resume", FONT_SIZE_MEDIUM, null, BUTTON_NORMAL);
         JButton restart = makeButton("Restart", FONT_SIZE_MEDIUM, null, BUTTON_NORMAL);
@@ -66,14 +80,4 @@ public class Pause extends Page {
         Game.removeCard(this);
         Game.removeCard(play);
     }
-    
-    /*
-     * Repaints the score and level labels.
-     */
-    @Override
-    public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        scoreLabel.setText("Score: " + play.getScore());
-        levelLabel.setText("Level: " + play.getLevel());
-    }
 }
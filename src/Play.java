@@ -1,11 +1,15 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.util.function.IntConsumer;
 import javax.swing.*;
 
 /*
  * Page that contains the game itself. The game is played on a Court, but this Page also contains
  * a time label (showing how many seconds are left before the next enemy wave starts), an options 
  * pane (showing the score, current level, and pause button), and an HP bar.
+ * 
+ * The labels listen to the Court's statistics, so they are only updated when what they show
+ * changes.
  */
 @SuppressWarnings("serial")
 public class Play extends Page {    
@@ -56,6 +60,16 @@ public class Play extends Page {
                 null, SwingConstants.CENTER);
         levelLabel = options.makeLabel("Level: " + court.getLevel(), FONT_SIZE_SMALL, 
                 null, SwingConstants.CENTER);
+        court.getScoreValue().addListener(new IntConsumer() {
+            public void accept(int score) {
+                scoreLabel.setText("Score: " + score);
+            }
+        });
+        court.getLevelValue().addListener(new IntConsumer() {
+            public void accept(int level) {
+                levelLabel.setText("Level: " + level);
+            }
+        });
         
         JButton pause = options.makeButton("Pause", FONT_SIZE_SMALL, null, BUTTON_SMALL);
         pause.addActionListener(new ActionListener() {
@@ -75,8 +89,13 @@ public class Play extends Page {
         Page bottomBar = new Page();
         bottomBar.setLayout(new GridBagLayout());
         GridBagConstraints c = new GridBagConstraints();
-        hpLabel = bottomBar.makeLabel("HP: " + court.getPlayerCopy().getHP() + " / " + Player.HP, 
+        hpLabel = bottomBar.makeLabel(hpText(court.getPlayerHP()), 
                 FONT_SIZE_SMALL, c, SwingConstants.CENTER);
+        court.getPlayerHPValue().addListener(new IntConsumer() {
+            public void accept(int hp) {
+                hpLabel.setText(hpText(hp));
+            }
+        });
         c.weightx = 1;
         
         JPanel hpPanel = new JPanel();
@@ -98,9 +117,26 @@ public class Play extends Page {
         Page timeLeft = new Page();
         timeLabel = timeLeft.makeLabel("Time until next wave: " + court.getTimeLeft(), 
                 FONT_SIZE_SMALL, null, SwingConstants.CENTER);
+        court.getTimeLeftValue().addListener(new IntConsumer() {
+            public void accept(int seconds) {
+                timeLabel.setText("Time until next wave: " + seconds);
+            }
+        });
         add(timeLeft, BorderLayout.NORTH);
     }
     
+    /*
+     * Getter methods for the Court's statistics, which change while the game is played.
+     */
+    
+    public ObservableInt getScoreValue() {
+        return court.getScoreValue();
+    }
+    
+    public ObservableInt getLevelValue() {
+        return court.getLevelValue();
+    }
+    
     /*
      * Getter method for the score.
      */
@@ -131,24 +167,17 @@ public class Play extends Page {
     }
     
     /*
-     * Repaints the Court and labels.
+     * Returns the text of the HP label, padded so that its width stays about the same as the HP
+     * drops below 100 and 10.
      */
-    @Override
-    public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        scoreLabel.setText("Score: " + court.getScore());
-        levelLabel.setText("Level: " + court.getLevel());
-        
+    private static String hpText(int hp) {
         String extraSpace = "";
-        int hp = court.getPlayerCopy().getHP();
         if (hp < 10) {
             extraSpace = "    ";
         } else if (hp < 100) {
             extraSpace = "  ";
         }
-        hpLabel.setText("HP: " + extraSpace + hp + " / " + Player.HP);
-        
-        timeLabel.setText("Time until next wave: " + court.getTimeLeft());
+        return "HP: " + extraSpace + hp + " / " + Player.HP;
     }
 
 }
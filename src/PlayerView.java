@@ -0,0 +1,17 @@
+/*
+ * Read-only view of the player's position, size, and HP. The Simulation hands out a single view
+ * that reads the live player, so callers always see the current values without copying the Player,
+ * and cannot move or damage it. (Damage goes through Simulation.damagePlayer instead.)
+ */
+public interface PlayerView {
+    
+    public int getPx();
+    
+    public int getPy();
+    
+    public int getWidth();
+    
+    public int getHeight();
+    
+    public int getHP();
+}
@@ -2,17 +2,18 @@ import java.awt.*;
 
 /*
  * Describes projectiles, which can be shot by either the player or a ranged enemy.
+ * 
+ * The state of every projectile in the game is kept in the Simulation's ProjectileStore, which
+ * moves, hit tests, and draws all of them at once. A Projectile object is only a handle to one of
+ * them: it is created with the projectile's starting fields, and once it has been added to the
+ * game (see Simulation.addProjectile), its getters read the projectile's current state from the
+ * store. After the projectile has been removed, the getters return its starting fields again.
  */
 public class Projectile {
-    private int px;
-    private int py;
     
-    // The "ends" of the projectile are represented as doubles to maximize accuracy.
-    // The px and py fields are rounded forms of the initX and initY fields.
-    private double initX;
-    private double initY;
-    private double endX;
-    private double endY;
+    // The starting fields of the projectile
+    private final int px;
+    private final int py;
     
     // Angle from horizontal (0 to 2pi)
     private final double direction;
@@ -21,92 +22,151 @@ public class Projectile {
     private final boolean enemy;
     
     private final int damage;
-    private final Court court;
+    private final Simulation simulation;
+    
+    // The projectile's slot in the ProjectileStore (and the slot's generation when it was added),
+    // or -1 if it has not been added to the game.
+    private int slot = -1;
+    private int generation;
     
     public static final int LENGTH = 30;
     public static final int SPEED = 15;
+    
+    // Number of ticks after which a projectile is removed, even if it has not hit anything. By
+    // then it has flown farther than across the view (see Simulation.WIDTH and HEIGHT), so this
+    // only matters in larger worlds, where it keeps the number of projectiles in flight bounded.
+    public static final int FLIGHT_TICKS = 40;
     public static final Color PLAYER_COLOR = Color.GREEN;
+
+    // Size below which a component of a segment is taken to be 0 (see segmentHitsBox). Math.cos
+    // and Math.sin return about 1e-16 rather than 0 for shots along an axis.
+    private static final double EPS = 1e-9;
     public static final Color ENEMY_COLOR = Color.RED;
     
-    // Constructs a projectile for a given position, direction, enemy boolean, damage, and court.
-    Projectile(int px, int py, double direction, boolean enemy, int damage, Court court) {
+    // Constructs a projectile for a given position, direction, enemy boolean, damage, and
+    // simulation.
+    Projectile(int px, int py, double direction, boolean enemy, int damage,
+            Simulation simulation) {
         this.px = px;
         this.py = py;
         this.direction = direction;
         this.enemy = enemy;
         this.damage = damage;
-        this.court = court;
-        
-        this.initX = px;
-        this.initY = py;
-        this.endX = px + Math.cos(direction) * LENGTH;
-        this.endY = py + Math.sin(direction) * LENGTH;
+        this.simulation = simulation;
     }
     
     /*
-     * Moves the projectile (i.e. its ends) in the appropriate direction based on SPEED and LENGTH,
-     * then calls the update method.
+     * Creates a handle to the projectile already in the given slot of the simulation's store.
      */
-    public void move() {     
-        initX += Math.cos(direction) * SPEED;
-        initY += Math.sin(direction) * SPEED;
-        endX = initX + Math.cos(direction) * LENGTH;
-        endY = initY + Math.sin(direction) * LENGTH;
-                
-        px = (int) Math.round(initX);
-        py = (int) Math.round(initY);
-        update();
+    Projectile(Simulation simulation, int slot) {
+        ProjectileStore store = simulation.getProjectileStore();
+        this.px = (int) Math.round(store.getX(slot));
+        this.py = (int) Math.round(store.getY(slot));
+        this.direction = store.getDirection(slot);
+        this.enemy = store.isEnemy(slot);
+        this.damage = store.getDamage(slot);
+        this.simulation = simulation;
+        this.slot = slot;
+        this.generation = store.getGeneration(slot);
     }
     
     /*
-     * Checks the state of the projectile after it has moved. Removes the projectile from the game
-     * state if it has hit a wall, an enemy (if it was fired by the player), or the player (if it
-     * was fired by a ranged enemy). For the latter two cases, decreases the enemy or player's HP
-     * accordingly.
-     * 
-     * Note that an enemy projectile is not affected if another enemy stands in its path.
+     * Adds the projectile to the given store. Used by Simulation.addProjectile.
      */
-    private void update() {
-        if (hitWall()) {
-            court.removeProjectile(this);
-        }
-        for (Entity e : court.getEnemiesAsEntities()) {
-            if (!enemy && hitEntity(e)) {
-                e.setHP(Math.max(e.getHP() - damage, 0));
-                court.removeProjectile(this);
-            }
-        }
-        if (enemy && hitEntity(court.getPlayerCopy())) {
-            court.setPlayerHP(Math.max(court.getPlayerCopy().getHP() - damage, 0));
-            court.removeProjectile(this);
+    void addTo(ProjectileStore store) {
+        slot = store.add(px, py, direction, enemy, damage);
+        generation = store.getGeneration(slot);
+    }
+    
+    /*
+     * Removes the projectile from the given store, if it is still there. Used by
+     * Simulation.removeProjectile.
+     */
+    void removeFrom(ProjectileStore store) {
+        if (store.isLive(slot, generation)) {
+            store.remove(slot);
         }
     }
     
     /*
-     * Determines if the projectile has hit a wall (i.e. if its far end is out of bounds).
+     * Determines if the projectile is not (or no longer) part of the game.
+     */
+    public boolean isRemoved() {
+        return !simulation.getProjectileStore().isLive(slot, generation);
+    }
+    
+    /*
+     * Determines if the projectile has hit a wall (i.e. if its far end is out of bounds, or if it
+     * crosses a solid tile of the map).
      */
     public boolean hitWall() {
-        return (endX >= Court.COURT_WIDTH || endX < 0 || endY >= Court.COURT_HEIGHT || endY < 0);
+        double endX = getStartX() + Math.cos(direction) * LENGTH;
+        double endY = getStartY() + Math.sin(direction) * LENGTH;
+        return (endX >= simulation.getWidth() || endX < 0 || endY >= simulation.getHeight()
+                || endY < 0) || simulation.segmentHitsWall(getStartX(), getStartY(), endX, endY);
     }
     
     /*
-     * Determines if the projectile has hit an entity.
+     * Determines if the projectile has hit an entity, i.e. if the segment of length LENGTH starting
+     * at (px, py) touches the entity's box. The edges of the box count as part of it.
      */
     public boolean hitEntity(Entity e) {
-        for (int i = 0; i <= LENGTH; i++) {
-            int x = (int) Math.round(px + Math.cos(direction) * i);
-            int y = (int) Math.round(py + Math.sin(direction) * i);
-
-            if (e.getInitialized() && x >= e.getPx() && x <= e.getPx() + e.getWidth()
-                && y >= e.getPy() && y <= e.getPy() + e.getHeight()) {
-                return true;
+        return e.getInitialized() && segmentHitsBox(getPx(), getPy(), Math.cos(direction) * LENGTH,
+                Math.sin(direction) * LENGTH, e.getPx(), e.getPy(), 
+                e.getPx() + e.getWidth(), e.getPy() + e.getHeight());
+    }
+    
+    /*
+     * Determines if the projectile has hit the player. (see hitEntity)
+     */
+    public boolean hitPlayer(PlayerView p) {
+        return segmentHitsBox(getPx(), getPy(), Math.cos(direction) * LENGTH, 
+                Math.sin(direction) * LENGTH, p.getPx(), p.getPy(), 
+                p.getPx() + p.getWidth(), p.getPy() + p.getHeight());
+    }
+    
+    /*
+     * Determines if the segment from (x0, y0) to (x0 + dx, y0 + dy) intersects the closed box
+     * [left, right] x [top, bottom].
+     * 
+     * The segment is clipped against the box's vertical slab and then its horizontal slab (the
+     * Liang-Barsky method): t0 and t1 track the part of the segment (as fractions of its length)
+     * that is still inside every slab seen so far, and the segment misses the box as soon as that
+     * part is empty. A component smaller than EPS is treated as 0, so that a segment along an
+     * axis is tested against that slab directly instead of dividing by almost 0.
+     */
+    static boolean segmentHitsBox(double x0, double y0, double dx, double dy,
+            double left, double top, double right, double bottom) {
+        double t0 = 0;
+        double t1 = 1;
+        
+        if (Math.abs(dx) < EPS) {
+            if (x0 < left || x0 > right) {
+                return false;
+            }
+        } else {
+            double tLeft = (left - x0) / dx;
+            double tRight = (right - x0) / dx;
+            t0 = Math.max(t0, Math.min(tLeft, tRight));
+            t1 = Math.min(t1, Math.max(tLeft, tRight));
+            if (t0 > t1) {
+                return false;
             }
         }
-        return false;
+        
+        if (Math.abs(dy) < EPS) {
+            return y0 >= top && y0 <= bottom;
+        } else {
+            double tTop = (top - y0) / dy;
+            double tBottom = (bottom - y0) / dy;
+            t0 = Math.max(t0, Math.min(tTop, tBottom));
+            t1 = Math.min(t1, Math.max(tTop, tBottom));
+            return t0 <= t1;
+        }
     }
     
     /*
-     *  The following four getter methods are used for testing.
+     *  The following getter methods are used for testing.
      */
     
     public double getDirection() {
@@ -114,28 +174,28 @@ public class Projectile {
     }
     
     public int getPx() {
-        return px;
+        return (int) Math.round(getStartX());
     }
     
     public int getPy() {
-        return px;
+        return (int) Math.round(getStartY());
     }
     
     public boolean enemyOrNot() {
         return enemy;
     }
     
-    /*
-     * Draws the projectile as a short line segment between its ends.
-     * 
-     * Projectiles shot by a ranged enemy are red, while those shot by the player are green.
-     */
-    public void draw(Graphics g) {
-        if (enemy) {
-            g.setColor(ENEMY_COLOR);
-        } else {
-            g.setColor(PLAYER_COLOR);
-        }
-        g.drawLine(px, py, (int) Math.round(endX), (int) Math.round(endY));
+    public int getDamage() {
+        return damage;
+    }
+    
+    private double getStartX() {
+        ProjectileStore store = simulation.getProjectileStore();
+        return store.isLive(slot, generation) ? store.getX(slot) : px;
+    }
+    
+    private double getStartY() {
+        ProjectileStore store = simulation.getProjectileStore();
+        return store.isLive(slot, generation) ? store.getY(slot) : py;
     }
 }
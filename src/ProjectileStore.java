@@ -0,0 +1,334 @@
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Holds the state of every projectile in the game in parallel primitive arrays, and moves, hit
+ * tests, and removes them in batch passes.
+ *
+ * Live projectiles are packed at the front of the arrays (indices 0 to size - 1), so each pass is a
+ * plain loop. A projectile is removed by moving the last live projectile into its place. Since that
+ * changes indices, each projectile is also given a stable slot number when it is added, and slots
+ * of removed projectiles are kept on a free list for reuse. A Projectile is a handle that refers to
+ * a slot; each slot also has a generation number, increased whenever the slot is freed, so that an
+ * old handle is not mistaken for the projectile that reused its slot.
+ *
+ * The arrays grow (by doubling) when they are full, but are never shrunk, so once the game has
+ * reached its peak number of projectiles, shooting does not allocate.
+ */
+public class ProjectileStore {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Simulation simulation;
+    private final int width;
+    private final int height;
+
+    private int size = 0;
+
+    // Indexed by position in the packed arrays. x and y are the (unrounded) start of each
+    // projectile.
+    private double[] x;
+    private double[] y;
+    private double[] prevX;
+    private double[] prevY;
+    private double[] cos;
+    private double[] sin;
+    private double[] direction;
+    private int[] damage;
+    private boolean[] enemy;
+    private boolean[] hit;
+    private int[] ticksLeft;
+    private int[] slotOf;
+
+    // Indexed by slot. indexOf is -1 for free slots.
+    private int[] indexOf;
+    private int[] generation;
+    private int[] freeSlots;
+    private int freeCount = 0;
+    private int slotCount = 0;
+
+    /*
+     * Creates an empty store for projectiles that are removed when they leave a width x height
+     * area.
+     */
+    ProjectileStore(Simulation simulation, int width, int height) {
+        this.simulation = simulation;
+        this.width = width;
+        this.height = height;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        prevX = new double[capacity];
+        prevY = new double[capacity];
+        cos = new double[capacity];
+        sin = new double[capacity];
+        direction = new double[capacity];
+        damage = new int[capacity];
+        enemy = new boolean[capacity];
+        hit = new boolean[capacity];
+        ticksLeft = new int[capacity];
+        slotOf = new int[capacity];
+        indexOf = new int[capacity];
+        generation = new int[capacity];
+        freeSlots = new int[capacity];
+    }
+
+    /*
+     * Doubles the capacity of every array, keeping their contents.
+     */
+    private void grow() {
+        int capacity = 2 * x.length;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        prevX = Arrays.copyOf(prevX, capacity);
+        prevY = Arrays.copyOf(prevY, capacity);
+        cos = Arrays.copyOf(cos, capacity);
+        sin = Arrays.copyOf(sin, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        damage = Arrays.copyOf(damage, capacity);
+        enemy = Arrays.copyOf(enemy, capacity);
+        hit = Arrays.copyOf(hit, capacity);
+        ticksLeft = Arrays.copyOf(ticksLeft, capacity);
+        slotOf = Arrays.copyOf(slotOf, capacity);
+        indexOf = Arrays.copyOf(indexOf, capacity);
+        generation = Arrays.copyOf(generation, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+
+    /*
+     * Makes room for at least the given number of projectiles in total, so that shooting up to
+     * that number of projectiles does not allocate.
+     */
+    public void ensureCapacity(int capacity) {
+        while (x.length < capacity) {
+            grow();
+        }
+    }
+
+    /*
+     * Adds a projectile starting at the given point and returns its slot.
+     */
+    public int add(int px, int py, double dir, boolean fromEnemy, int dmg) {
+        if (size == x.length) {
+            grow();
+        }
+
+        int slot;
+        if (freeCount > 0) {
+            freeCount--;
+            slot = freeSlots[freeCount];
+        } else {
+            slot = slotCount;
+            slotCount++;
+        }
+
+        int i = size;
+        size++;
+        x[i] = px;
+        y[i] = py;
+        prevX[i] = px;
+        prevY[i] = py;
+        cos[i] = Math.cos(dir);
+        sin[i] = Math.sin(dir);
+        direction[i] = dir;
+        damage[i] = dmg;
+        enemy[i] = fromEnemy;
+        hit[i] = false;
+        ticksLeft[i] = Projectile.FLIGHT_TICKS;
+        slotOf[i] = slot;
+        indexOf[slot] = i;
+        return slot;
+    }
+
+    /*
+     * Removes the projectile in the given slot, if there is one.
+     */
+    public void remove(int slot) {
+        if (slot >= 0 && slot < slotCount && indexOf[slot] >= 0) {
+            removeAt(indexOf[slot]);
+        }
+    }
+
+    /*
+     * Removes the projectile at the given index by moving the last projectile into its place, and
+     * frees its slot.
+     */
+    private void removeAt(int i) {
+        int slot = slotOf[i];
+        int last = size - 1;
+        if (i != last) {
+            x[i] = x[last];
+            y[i] = y[last];
+            prevX[i] = prevX[last];
+            prevY[i] = prevY[last];
+            cos[i] = cos[last];
+            sin[i] = sin[last];
+            direction[i] = direction[last];
+            damage[i] = damage[last];
+            enemy[i] = enemy[last];
+            hit[i] = hit[last];
+            ticksLeft[i] = ticksLeft[last];
+            slotOf[i] = slotOf[last];
+            indexOf[slotOf[i]] = i;
+        }
+        size--;
+
+        indexOf[slot] = -1;
+        generation[slot]++;
+        freeSlots[freeCount] = slot;
+        freeCount++;
+    }
+
+    /*
+     * Advances every projectile by one tick: moves them all, then hit tests them all, then removes
+     * the ones that hit something or a wall.
+     */
+    public void update() {
+        moveAll();
+        hitTestAll();
+        removeFinished();
+    }
+
+    /*
+     * Moves every projectile SPEED pixels in its direction, remembering where it was for painting,
+     * and counts down the ticks it has left.
+     */
+    private void moveAll() {
+        for (int i = 0; i < size; i++) {
+            prevX[i] = x[i];
+            prevY[i] = y[i];
+            x[i] += cos[i] * Projectile.SPEED;
+            y[i] += sin[i] * Projectile.SPEED;
+            ticksLeft[i]--;
+        }
+    }
+
+    /*
+     * Damages whatever each projectile hits (the player for enemy projectiles, any initialized
+     * enemies for the player's projectiles) and marks the projectile as having hit something.
+     *
+     * Note that an enemy projectile is not affected if another enemy stands in its path. Only the
+     * enemies near a projectile (as found by the simulation's SpatialGrid) are checked.
+     */
+    private void hitTestAll() {
+        PlayerView player = simulation.getPlayerView();
+        SpatialGrid grid = simulation.getGrid();
+
+        for (int i = 0; i < size; i++) {
+            long startX = Math.round(x[i]);
+            long startY = Math.round(y[i]);
+            double dx = cos[i] * Projectile.LENGTH;
+            double dy = sin[i] * Projectile.LENGTH;
+
+            if (enemy[i]) {
+                if (Projectile.segmentHitsBox(startX, startY, dx, dy, player.getPx(),
+                        player.getPy(), player.getPx() + player.getWidth(),
+                        player.getPy() + player.getHeight())) {
+                    simulation.damagePlayer(damage[i]);
+                    hit[i] = true;
+                }
+            } else {
+                int minX = (int) Math.floor(Math.min(startX, startX + dx));
+                int minY = (int) Math.floor(Math.min(startY, startY + dy));
+                int maxX = (int) Math.ceil(Math.max(startX, startX + dx));
+                int maxY = (int) Math.ceil(Math.max(startY, startY + dy));
+                List<Entity> nearby = grid.query(
+                        minX - 1, minY - 1, maxX - minX + 2, maxY - minY + 2);
+                for (int j = 0; j < nearby.size(); j++) {
+                    Entity e = nearby.get(j);
+                    if (e.isEnemy() && e.getInitialized() && Projectile.segmentHitsBox(
+                            startX, startY, dx, dy, e.getPx(), e.getPy(),
+                            e.getPx() + e.getWidth(), e.getPy() + e.getHeight())) {
+                        e.setHP(Math.max(e.getHP() - damage[i], 0));
+                        hit[i] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Removes every projectile that has hit something, whose far end is out of bounds, or that
+     * has no ticks left (see Projectile.FLIGHT_TICKS).
+     */
+    private void removeFinished() {
+        int i = 0;
+        while (i < size) {
+            if (hit[i] || ticksLeft[i] == 0 || hitWall(i)) {
+                removeAt(i);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /*
+     * Determines if the projectile at the given index has hit a wall (i.e. if its far end is out of
+     * bounds, or if it has crossed a solid tile of the map anywhere between where it started this
+     * tick and where its far end is now).
+     */
+    private boolean hitWall(int i) {
+        double endX = x[i] + cos[i] * Projectile.LENGTH;
+        double endY = y[i] + sin[i] * Projectile.LENGTH;
+        return (endX >= width || endX < 0 || endY >= height || endY < 0)
+                || simulation.segmentHitsWall(prevX[i], prevY[i], endX, endY);
+    }
+
+    /*
+     * Adds every projectile that may be visible within the given area (during the last tick) to
+     * the given snapshot.
+     */
+    public void writeTo(Snapshot snapshot, int left, int top, int right, int bottom) {
+        int margin = Projectile.LENGTH + Projectile.SPEED;
+        for (int i = 0; i < size; i++) {
+            if (x[i] >= left - margin && x[i] <= right + margin
+                    && y[i] >= top - margin && y[i] <= bottom + margin) {
+                snapshot.addProjectile(x[i], y[i], prevX[i], prevY[i], direction[i], enemy[i]);
+            }
+        }
+    }
+
+    /*
+     * The following methods look up a single projectile by slot. They are used by Projectile
+     * handles.
+     */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isLive(int slot, int gen) {
+        return slot >= 0 && slot < slotCount && indexOf[slot] >= 0 && generation[slot] == gen;
+    }
+
+    public int getGeneration(int slot) {
+        return generation[slot];
+    }
+
+    public int getSlot(int i) {
+        return slotOf[i];
+    }
+
+    public double getX(int slot) {
+        return x[indexOf[slot]];
+    }
+
+    public double getY(int slot) {
+        return y[indexOf[slot]];
+    }
+
+    public double getDirection(int slot) {
+        return direction[indexOf[slot]];
+    }
+
+    public boolean isEnemy(int slot) {
+        return enemy[indexOf[slot]];
+    }
+
+    public int getDamage(int slot) {
+        return damage[indexOf[slot]];
+    }
+}
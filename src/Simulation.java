@@ -0,0 +1,852 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Contains the rules of the game, independent of any user interface.
+ *
+ * A Simulation holds the player, the enemies, the projectiles, the score, and the wave/level
+ * counters, and advances all of them by exactly one tick each time tick() is called. Nothing here
+ * depends on Swing or on wall-clock time: every delay (the wave countdown, and each enemy's
+ * initialization and attacks) is measured in ticks by the Simulation's clock, a TimingWheel, so a
+ * Simulation can be stepped as fast as the CPU allows (see HeadlessRunner), or at TICK_INTERVAL by
+ * a GameLoop.
+ *
+ * After each tick, the view copies what it needs to paint into a Snapshot (see writeSnapshot).
+ * Since every entity remembers its position from the start of the tick, the snapshot can include
+ * both positions, so that entities can be drawn part of the way between them.
+ *
+ * The world may be larger than the view, in which case the view shows the part of the world
+ * around the player (as seen by a camera that follows the player), and only the entities and
+ * projectiles in that part are copied into the snapshot. The size of the world is given by the
+ * system properties "worldWidth" and "worldHeight" (e.g. java -DworldWidth=2000
+ * -DworldHeight=2000 Game), and is WIDTH x HEIGHT by default.
+ *
+ * The world may also contain walls, given by a TileMap. The map file is given by the system
+ * property "map" (e.g. java -Dmap=files/arena.map Game), in which case the world is the size of
+ * the map. Only the parts of the map near the player are kept in memory.
+ *
+ * Everything random in the game comes from a SplittableRandom created from the Simulation's seed,
+ * which is split into a separate generator for spawning and for the enemies of each wave (see
+ * WavePlan). Two Simulations with the same seed and the same player input therefore play out the
+ * same way, even when enemies are planned (or waves built) on several threads. The seed is given
+ * by the system property "seed" (e.g. java -Dseed=42 Game), and is random by default.
+ *
+ * The waves of each level are given by a WaveScript. The enemies of the next wave are created (as
+ * a WavePlan) on another thread with the common ForkJoinPool while the current wave is played, so
+ * starting a wave does not have to create them. When the wave starts, and after the delay of each
+ * of its groups, its enemies are released from the plan into a queue.
+ *
+ * A new wave's enemies are not placed all at once. They wait in the queue, and at most
+ * SPAWNS_PER_TICK of them are tried each tick, so that a large wave does not make one tick take
+ * much longer than the others. An enemy that cannot find a free position (see Enemy.spawn) goes to
+ * the back of the queue, so it does not hold up the enemies behind it, and is dropped after
+ * MAX_FAILED_SPAWNS tries, so that an enemy whose region stays full cannot keep its wave from
+ * ending.
+ *
+ * Enemies are updated in two phases. First, every enemy plans its velocity (see Enemy.plan), which
+ * only reads the game state. Then, one enemy at a time and always in the same order, each enemy
+ * moves with its planned velocity, has its collisions resolved, and attacks. When there are at
+ * least PARALLEL_ENEMIES enemies, the first phase is split across the cores with the common
+ * ForkJoinPool; the second phase keeps the outcome of a tick independent of how planning was split.
+ *
+ * The state of the player and every placed enemy is kept in an EntityStore, and the state of every
+ * projectile in a ProjectileStore. Both keep each field of every entity (or projectile) together
+ * in one array, so passes over all of them touch memory in order.
+ *
+ * Once a wave has been spawned, tick() does not allocate: newWave reserves room for the wave's
+ * enemies in the list, the stores, the SpatialGrid and the planning tasks, enemies are kept in a
+ * list that is updated in place, and both stores reuse the space of removed entities and
+ * projectiles.
+ */
+public class Simulation {
+
+    // Default size of the world, which is also the size of the view of it (see Court)
+    public static final int WIDTH = 400;
+    public static final int HEIGHT = 400;
+
+    // Milliseconds of game time per tick
+    public static final int TICK_INTERVAL = 35;
+
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    // Longest wave (in seconds) whose length in milliseconds, and therefore in ticks, fits in an
+    // int
+    static final int MAX_WAVE_SECONDS = Integer.MAX_VALUE / MILLIS_PER_SECOND;
+
+    // The map given by the system property "map", or null if there is none. Each Simulation reads
+    // the map through its own copy (see TileMap.copy).
+    private static final TileMap DEFAULT_MAP = loadMap(System.getProperty("map"));
+
+    private final int width;
+    private final int height;
+
+    // The seed that every random number in the game derives from, the generator that the
+    // generators of the spawner and of each enemy are split from, and the spawner's generator
+    private final long seed;
+    private final SplittableRandom random;
+    private final SplittableRandom spawnRandom;
+
+    // The walls of the world, or null if it has none
+    private final TileMap map;
+
+    // The kinds of enemies in the game, and the waves they come in
+    private final Archetypes archetypes = Archetypes.getDefault();
+    private final WaveScript script = WaveScript.getDefault();
+
+    private int score = 0;
+    private boolean over = false;
+
+    // Runs every timer of the game
+    private final TimingWheel clock = new TimingWheel();
+
+    // Fires when the next wave starts
+    private final TimingWheel.Timer waveTimer = new TimingWheel.Timer() {
+        protected void fire() {
+            newWave();
+        }
+    };
+
+    // Size (in pixels) of each cell of the SpatialGrid
+    private static final int GRID_CELL_SIZE = 2 * Enemy.SIZE;
+
+    // Maximum number of waiting enemies tried each tick, whether or not they are placed
+    private static final int SPAWNS_PER_TICK = 8;
+
+    // Number of tries after which a waiting enemy that has not found a free position is dropped
+    private static final int MAX_FAILED_SPAWNS = 64;
+
+    // Number of enemies from which planning is done in parallel, and the number of enemies that
+    // each parallel task plans
+    private static final int PARALLEL_ENEMIES = 256;
+    private static final int ENEMIES_PER_TASK = 64;
+
+    // Tasks that plan enemies in parallel (see planEnemies). The first ENEMIES_PER_TASK enemies
+    // are planned by the thread that ticks, so planTasks[0] is never used.
+    private PlanTask[] planTasks = new PlanTask[0];
+
+    // Fewest ticks between the attacks of any ranged archetype (see newWave)
+    private final int fastestAttack;
+
+    // Distance (in pixels) outside of the view within which entities are copied into snapshots
+    private static final int VIEW_MARGIN = Math.max(Player.SIZE, Enemy.SIZE);
+
+    // Messages are kept in constants, which are interned when the class is loaded. Otherwise the
+    // JIT compiler interns them the first time it is asked to fully optimize a method of the class,
+    // which may be in the middle of a tick long after the game has warmed up.
+    private static final String MAP_ERROR = "There was an error opening the map file.";
+
+    private EntityStore entities;
+    private Player player;
+    private PlayerView playerView;
+    private ArrayList<Enemy> enemies;
+
+    // Enemies of the current or earlier waves that have been released but not placed yet
+    private EnemyQueue pendingEnemies;
+
+    // The enemies of the current wave that have not been released yet, the plan for the next wave
+    // (which may still be being built), and the tick on which the current wave started
+    private WavePlan wavePlan;
+    private ForkJoinTask<WavePlan> nextWavePlan;
+    private long waveStart;
+
+    private ProjectileStore projectiles;
+
+    // Directions toward the player, followed by melee enemies
+    private FlowField flowField;
+
+    // Contains the player and every enemy, bucketed by position
+    private SpatialGrid grid;
+
+    // The current level, and the number of the current wave within it (see WaveScript). Each level
+    // plays every wave of the script.
+    private int levelNumber = 1;
+    private int waveNumber;
+
+    /*
+     * Creates a new Simulation with the map, world size, and seed given by the system properties
+     * (see above).
+     */
+    public Simulation() {
+        this(defaultSeed());
+    }
+
+    /*
+     * Creates a new Simulation with the map or world size given by the system properties (see
+     * above), and the given seed.
+     */
+    public Simulation(long seed) {
+        this(DEFAULT_MAP != null ? DEFAULT_MAP.getWidth() : Integer.getInteger("worldWidth", WIDTH),
+                DEFAULT_MAP != null ? DEFAULT_MAP.getHeight()
+                        : Integer.getInteger("worldHeight", HEIGHT),
+                DEFAULT_MAP != null ? DEFAULT_MAP.copy() : null, seed);
+    }
+
+    /*
+     * Creates a new Simulation with an empty width x height world.
+     */
+    public Simulation(int width, int height) {
+        this(width, height, null, defaultSeed());
+    }
+
+    /*
+     * Creates a new player, List of enemies, and store of projectiles in a width x height world
+     * with the given map (which may be null) and seed, then begins the first wave.
+     */
+    public Simulation(int width, int height, TileMap map, long seed) {
+        this.width = width;
+        this.height = height;
+        this.map = map;
+        this.seed = seed;
+        random = new SplittableRandom(seed);
+        spawnRandom = random.split();
+        fastestAttack = fastestAttack(archetypes);
+        grid = new SpatialGrid(width, height, GRID_CELL_SIZE,
+                Math.max(Player.SIZE, Enemy.SIZE));
+        entities = new EntityStore(this);
+        player = new Player(this);
+        player.attach();
+        grid.insert(player);
+        playerView = new PlayerView() {
+            public int getPx() {
+                return player.getPx();
+            }
+            
+            public int getPy() {
+                return player.getPy();
+            }
+            
+            public int getWidth() {
+                return player.getWidth();
+            }
+            
+            public int getHeight() {
+                return player.getHeight();
+            }
+            
+            public int getHP() {
+                return player.getHP();
+            }
+        };
+        enemies = new ArrayList<>();
+        pendingEnemies = new EnemyQueue();
+        projectiles = new ProjectileStore(this, width, height);
+        flowField = new FlowField(this);
+        updateFlowField();
+
+        nextWavePlan = planWave(1, 1);
+        newWave();
+        spawnPendingEnemies();
+    }
+
+    /*
+     * Returns the fewest ticks between the attacks of any ranged archetype of the given ones, or
+     * Integer.MAX_VALUE if none of them are ranged.
+     */
+    private static int fastestAttack(Archetypes archetypes) {
+        int fastest = Integer.MAX_VALUE;
+        for (int a = 0; a < archetypes.count(); a++) {
+            if (archetypes.getBehavior(a) == Archetypes.RANGED) {
+                fastest = Math.min(fastest, archetypes.getTicksPerAttack(a));
+            }
+        }
+        return fastest;
+    }
+
+    /*
+     * Returns the seed given by the system property "seed", or a random seed if there is none.
+     */
+    private static long defaultSeed() {
+        Long seed = Long.getLong("seed");
+        return seed != null ? seed : new SplittableRandom().nextLong();
+    }
+
+    /*
+     * Opens the map file at the given path, or returns null if there is no path or the file cannot
+     * be opened.
+     */
+    private static TileMap loadMap(String path) {
+        if (path == null) {
+            return null;
+        }
+        try {
+            return TileMap.open(FileSystems.getDefault().getPath(path));
+        } catch (IOException e) {
+            System.out.println(MAP_ERROR);
+            return null;
+        }
+    }
+
+    /*
+     * Advances the game state by one tick. Moves all projectiles, then moves the player, then
+     * removes the enemies that the projectiles have defeated, then moves all other enemies, then
+     * advances the clock (which fires the timers that are due), and finally places some of the
+     * enemies waiting to spawn. Does nothing once the game is over.
+     */
+    public void tick() {
+        if (over) {
+            return;
+        }
+
+        // Remembers where every entity was before this tick.
+        entities.savePositions();
+
+        // Makes sure the part of the map around the player is loaded.
+        if (map != null) {
+            map.pageAround(player.getPx() + player.getWidth() / 2,
+                    player.getPy() + player.getHeight() / 2);
+        }
+
+        // Moves all projectiles, and removes the ones that hit something.
+        projectiles.update();
+
+        // Moves the player. If the player has no more HP, then the game is over.
+        player.move();
+        if (player.getHP() <= 0) {
+            over = true;
+        }
+
+        // Points the flow field at the player's new position (if it has moved to another cell).
+        updateFlowField();
+
+        // Removes every enemy that has no more HP from the game state, and increments the score by
+        // the current level number for each. A removed enemy's slot is filled by the last enemy in
+        // the list, which is then checked in the same iteration.
+        int i = 0;
+        while (i < enemies.size()) {
+            Enemy e = enemies.get(i);
+            if (e.getInitialized() && e.getHP() <= 0) {
+                removeEnemyAt(i);
+                score += levelNumber;
+                continue;
+            }
+            i++;
+        }
+
+        // Plans the velocity of every enemy from the positions at the start of this phase.
+        planEnemies();
+
+        // Moves all initialized enemies, in one pass over the EntityStore.
+        entities.moveEnemies();
+
+        // Finishes initializing enemies, makes enemies attack, and starts the next wave, for
+        // whichever of these are due on this tick.
+        clock.advance();
+
+        // Releases the enemies of the current wave whose delay is over, then places some of the
+        // enemies waiting to spawn. They start initializing on the next tick.
+        releasePlannedEnemies(clock.getTime() - waveStart);
+        spawnPendingEnemies();
+
+        // Starts a new wave of enemies (which restarts the wave countdown) if there are no enemies
+        // left. If the current wave is entirely defeated before the next wave begins, the score is
+        // incremented by the number of seconds left until the start of the next wave.
+        if (enemies.isEmpty() && pendingEnemies.isEmpty() && wavePlan.remaining() == 0) {
+            score += getTimeLeft();
+            newWave();
+        }
+    }
+
+    private void updateFlowField() {
+        flowField.update(player.getPx() + player.getWidth() / 2,
+                player.getPy() + player.getHeight() / 2);
+    }
+
+    /*
+     * Plans the velocity of every initialized enemy, in parallel if there are enough enemies.
+     *
+     * In parallel, every ENEMIES_PER_TASK enemies but the first are handed to the common
+     * ForkJoinPool as a task, and the first ones are planned on this thread. Then every task that
+     * no worker has started yet is taken back and run here, and this thread yields until the
+     * workers have finished the others. It never blocks in the pool, which would allocate. The
+     * tasks are created when a wave starts (see reservePlanTasks) and reused on every tick, so
+     * planning does not allocate either way.
+     */
+    private void planEnemies() {
+        if (enemies.size() < PARALLEL_ENEMIES) {
+            planEnemies(0, enemies.size());
+            return;
+        }
+
+        // Only creates tasks here if enemies were added outside of a wave (see addEnemy).
+        reservePlanTasks(enemies.size());
+        int count = (enemies.size() + ENEMIES_PER_TASK - 1) / ENEMIES_PER_TASK;
+        for (int t = 1; t < count; t++) {
+            planTasks[t].reinitialize();
+            ForkJoinPool.commonPool().execute(planTasks[t]);
+        }
+        planEnemies(0, ENEMIES_PER_TASK);
+        for (int t = count - 1; t > 0; t--) {
+            if (planTasks[t].tryUnfork()) {
+                planTasks[t].invoke();
+            }
+            while (!planTasks[t].isDone()) {
+                Thread.yield();
+            }
+            // Rethrows anything thrown while planning
+            planTasks[t].join();
+        }
+    }
+
+    private void planEnemies(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Enemy e = enemies.get(i);
+            if (e.getInitialized()) {
+                e.plan();
+            }
+        }
+    }
+
+    /*
+     * Makes sure that there are enough planning tasks for the given number of enemies.
+     */
+    private void reservePlanTasks(int enemyCount) {
+        int count = (enemyCount + ENEMIES_PER_TASK - 1) / ENEMIES_PER_TASK;
+        if (count > planTasks.length) {
+            PlanTask[] tasks = Arrays.copyOf(planTasks, count);
+            for (int t = planTasks.length; t < count; t++) {
+                tasks[t] = new PlanTask(t);
+            }
+            planTasks = tasks;
+        }
+    }
+
+    /*
+     * Plans the (at most) ENEMIES_PER_TASK enemies starting at index * ENEMIES_PER_TASK.
+     */
+    @SuppressWarnings("serial")
+    private class PlanTask extends RecursiveAction {
+        private final int index;
+
+        PlanTask(int index) {
+            this.index = index;
+        }
+
+        @Override
+        protected void compute() {
+            int from = index * ENEMIES_PER_TASK;
+            planEnemies(from, Math.min(from + ENEMIES_PER_TASK, enemies.size()));
+        }
+    }
+
+    /*
+     * Removes the enemy at the given index by moving the last enemy into its place.
+     */
+    private void removeEnemyAt(int i) {
+        Enemy e = enemies.get(i);
+        Enemy last = enemies.remove(enemies.size() - 1);
+        if (i < enemies.size()) {
+            enemies.set(i, last);
+        }
+        grid.remove(e);
+        e.detach();
+        e.stopTimers();
+    }
+
+    /*
+     * Starts the next wave of the script (or the first wave of the next level, after the last
+     * one): restarts the wave countdown, takes the wave's plan (waiting for it if it is not built
+     * yet), and starts building the plan for the wave after it. Enemies of the previous wave that
+     * have not been released yet are released first.
+     */
+    private void newWave() {
+        if (waveNumber == script.getWaveCount()) {
+            waveNumber = 1;
+            levelNumber++;
+        } else {
+            waveNumber++;
+        }
+        clock.schedule(waveTimer, script.getWaveTicks(waveNumber));
+
+        if (wavePlan != null) {
+            releasePlannedEnemies(Long.MAX_VALUE);
+        }
+        wavePlan = nextWavePlan.join();
+        waveStart = clock.getTime();
+        if (waveNumber == script.getWaveCount()) {
+            nextWavePlan = planWave(levelNumber + 1, 1);
+        } else {
+            nextWavePlan = planWave(levelNumber, waveNumber + 1);
+        }
+
+        // Makes room for the whole wave now, so that releasing, placing, planning, and moving its
+        // enemies, and their shots, does not allocate. Every enemy is counted as shooting as often
+        // as the fastest ranged archetype, and the player as shooting on every tick.
+        int enemyCount = enemies.size() + pendingEnemies.size() + wavePlan.remaining();
+        enemies.ensureCapacity(enemyCount);
+        pendingEnemies.ensureCapacity(pendingEnemies.size() + wavePlan.remaining());
+        entities.ensureCapacity(1 + enemyCount);
+        grid.reserve(1 + enemyCount);
+        reservePlanTasks(enemyCount);
+        projectiles.ensureCapacity(Projectile.FLIGHT_TICKS + 1
+                + enemyCount * (Projectile.FLIGHT_TICKS / fastestAttack + 1));
+        releasePlannedEnemies(0);
+    }
+
+    /*
+     * Starts building the plan for the given wave and level on the common ForkJoinPool.
+     */
+    private ForkJoinTask<WavePlan> planWave(int level, int wave) {
+        return ForkJoinPool.commonPool().submit(new PlanWaveTask(level, wave, random.split()));
+    }
+
+    /*
+     * Builds a WavePlan. The plan's generator is split off on the thread that ticks the
+     * Simulation, when the task is created, so the plan does not depend on when the task runs.
+     */
+    @SuppressWarnings("serial")
+    private class PlanWaveTask extends RecursiveTask<WavePlan> {
+        private final int level;
+        private final int wave;
+        private final SplittableRandom planRandom;
+
+        PlanWaveTask(int level, int wave, SplittableRandom planRandom) {
+            this.level = level;
+            this.wave = wave;
+            this.planRandom = planRandom;
+        }
+
+        @Override
+        protected WavePlan compute() {
+            return new WavePlan(Simulation.this, script, level, wave, planRandom);
+        }
+    }
+
+    /*
+     * Adds the enemies of the current wave that are due to be released the given number of ticks
+     * after the start of the wave to the queue of enemies waiting to spawn.
+     */
+    private void releasePlannedEnemies(long ticks) {
+        Enemy e;
+        while ((e = wavePlan.release(ticks)) != null) {
+            pendingEnemies.add(e);
+        }
+    }
+
+    /*
+     * Tries to place up to SPAWNS_PER_TICK waiting enemies, in the order they are queued. An enemy
+     * that cannot find a free position goes to the back of the queue, or is dropped once it has
+     * failed MAX_FAILED_SPAWNS times.
+     */
+    private void spawnPendingEnemies() {
+        for (int i = 0; i < SPAWNS_PER_TICK && !pendingEnemies.isEmpty(); i++) {
+            Enemy e = pendingEnemies.poll();
+            if (!e.spawn() && e.getFailedSpawns() < MAX_FAILED_SPAWNS) {
+                pendingEnemies.add(e);
+            }
+        }
+    }
+
+    /*
+     * The following methods are getter/setter methods for certain private fields.
+     */
+
+    public int getScore() {
+        return score;
+    }
+
+    public boolean isOver() {
+        return over;
+    }
+
+    public Set<Entity> getEnemiesAsEntities() {
+        Set<Entity> entities = new HashSet<>();
+        for (Enemy e : enemies) {
+            entities.add(e);
+        }
+        return entities;
+    }
+
+    public Set<Enemy> getEnemies() {
+        return new HashSet<Enemy>(enemies);
+    }
+
+    /*
+     * Returns a new handle to each projectile currently in the game.
+     */
+    public Set<Projectile> getProjectiles() {
+        Set<Projectile> handles = new HashSet<>();
+        for (int i = 0; i < projectiles.size(); i++) {
+            handles.add(new Projectile(this, projectiles.getSlot(i)));
+        }
+        return handles;
+    }
+
+    public void setPlayerHP(int i) {
+        player.setHP(i);
+    }
+
+    /*
+     * Returns a read-only view of the player. The same view is returned every time, and it always
+     * reflects the player's current state.
+     */
+    public PlayerView getPlayerView() {
+        return playerView;
+    }
+
+    /*
+     * Decreases the player's HP by the given damage (but not below 0). This is the only way enemies
+     * and their projectiles hurt the player.
+     */
+    public void damagePlayer(int damage) {
+        player.setHP(Math.max(player.getHP() - damage, 0));
+    }
+
+    public void setPlayerVx(int i) {
+        player.setVx(i);
+    }
+
+    public void setPlayerVy(int i) {
+        player.setVy(i);
+    }
+
+    /*
+     * Aims the player at the given point and shoots a projectile towards it.
+     */
+    public void playerShoot(int targetX, int targetY) {
+        player.setTarget(targetX, targetY);
+        player.attack();
+    }
+
+    /*
+     * Returns the given number of seconds in ticks (rounded down).
+     */
+    static int secondsToTicks(int seconds) {
+        return (int) ((long) seconds * MILLIS_PER_SECOND / TICK_INTERVAL);
+    }
+
+    /*
+     * Returns the number of seconds left until the next wave starts, rounded up.
+     */
+    public int getTimeLeft() {
+        return (int) (((long) clock.ticksUntil(waveTimer) * TICK_INTERVAL + MILLIS_PER_SECOND - 1)
+                / MILLIS_PER_SECOND);
+    }
+
+    public int getLevel() {
+        return levelNumber;
+    }
+
+    public int getWave() {
+        return waveNumber;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /*
+     * Returns a new generator, split from the Simulation's own, for an enemy to use. Must be called
+     * from the thread that ticks the Simulation.
+     */
+    SplittableRandom newRandom() {
+        return random.split();
+    }
+
+    /*
+     * Returns the generator used to choose where enemies spawn.
+     */
+    SplittableRandom getSpawnRandom() {
+        return spawnRandom;
+    }
+
+    /*
+     * The following methods are used to add/remove enemies/projectiles.
+     */
+
+    public void addEnemy(Enemy e) {
+        // An enemy has a slot in the EntityStore exactly while it is in the game
+        if (e.getSlot() < 0) {
+            e.attach();
+            enemies.add(e);
+            grid.insert(e);
+            e.startInitializing();
+        }
+    }
+
+    public void removeEnemy(Enemy e) {
+        int i = enemies.indexOf(e);
+        if (i >= 0) {
+            removeEnemyAt(i);
+        }
+    }
+
+    public void addProjectile(Projectile p) {
+        p.addTo(projectiles);
+    }
+
+    public void removeProjectile(Projectile p) {
+        p.removeFrom(projectiles);
+    }
+
+    /*
+     * Adds a projectile with the given fields to the game state without creating a Projectile
+     * handle for it. Used by the player and ranged enemies to attack.
+     */
+    public void shoot(int px, int py, double direction, boolean enemy, int damage) {
+        projectiles.add(px, py, direction, enemy, damage);
+    }
+
+    /*
+     * Returns the grid used to find the entities near a given area.
+     */
+    SpatialGrid getGrid() {
+        return grid;
+    }
+
+    /*
+     * Returns the store that holds the state of the player and every placed enemy.
+     */
+    EntityStore getEntityStore() {
+        return entities;
+    }
+
+    /*
+     * Returns the number of pairs of entities that overlap, which is always 0 between ticks (see
+     * EntityStore.move). Used for testing.
+     */
+    int countOverlaps() {
+        return entities.countOverlaps();
+    }
+
+    /*
+     * Returns the clock that runs the game's timers.
+     */
+    TimingWheel getClock() {
+        return clock;
+    }
+
+    /*
+     * Returns the field of directions toward the player (see FlowField).
+     */
+    FlowField getFlowField() {
+        return flowField;
+    }
+
+    /*
+     * Fills the given snapshot with the position of the camera for a viewWidth x viewHeight view,
+     * and every entity and projectile that the view can show.
+     *
+     * The camera keeps the player at the center of the view, except near the edges of the world,
+     * where it stops so that the view never shows anything outside of the world. Since painting
+     * interpolates, an entity is included if it might be visible anywhere between the camera's
+     * position before and after the tick. Entities are found with the SpatialGrid, so entities far
+     * from the view are never looked at.
+     */
+    public void writeSnapshot(Snapshot snapshot, int viewWidth, int viewHeight) {
+        int cameraX = cameraPosition(player.getPx(), player.getWidth(), viewWidth, width);
+        int cameraY = cameraPosition(player.getPy(), player.getHeight(), viewHeight, height);
+        int prevCameraX = cameraPosition(player.getPrevPx(), player.getWidth(), viewWidth, width);
+        int prevCameraY = cameraPosition(player.getPrevPy(), player.getHeight(), viewHeight,
+                height);
+        snapshot.reset(cameraX, cameraY, prevCameraX, prevCameraY);
+
+        // Anything that moved into view during the tick is at most one tick's movement (which is
+        // less than the size of an entity) away from it.
+        int left = Math.min(cameraX, prevCameraX) - VIEW_MARGIN;
+        int top = Math.min(cameraY, prevCameraY) - VIEW_MARGIN;
+        int right = Math.max(cameraX, prevCameraX) + viewWidth + VIEW_MARGIN;
+        int bottom = Math.max(cameraY, prevCameraY) + viewHeight + VIEW_MARGIN;
+
+        if (map != null) {
+            writeTiles(snapshot, Math.max(left, 0), Math.max(top, 0), Math.min(right, width - 1),
+                    Math.min(bottom, height - 1));
+        }
+
+        List<Entity> visible = grid.query(left, top, right - left, bottom - top);
+        for (int i = 0; i < visible.size(); i++) {
+            Entity e = visible.get(i);
+            int kind = Snapshot.KIND_PLAYER;
+            int stage = Enemy.TICKS_TO_INITIALIZE;
+            if (e.isEnemy()) {
+                kind = Snapshot.enemyKind(e.getKind());
+                if (!e.getInitialized()) {
+                    stage = ((Enemy) e).getInitStage();
+                }
+            }
+            snapshot.addEntity(kind, e.getPx(), e.getPy(), e.getPrevPx(), e.getPrevPy(),
+                    e.getWidth(), e.getHeight(), stage);
+        }
+        projectiles.writeTo(snapshot, left, top, right, bottom);
+    }
+
+    /*
+     * Adds every solid tile of the map that overlaps the given area to the given snapshot.
+     */
+    private void writeTiles(Snapshot snapshot, int left, int top, int right, int bottom) {
+        int tileSize = map.getTileSize();
+        for (int ty = top / tileSize * tileSize; ty <= bottom; ty += tileSize) {
+            for (int tx = left / tileSize * tileSize; tx <= right; tx += tileSize) {
+                if (map.isSolid(tx, ty)) {
+                    snapshot.addTile(tx, ty, tileSize);
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns the position (along one axis) of a camera with a view of the given size that is
+     * centered on the player, but kept within the world.
+     */
+    private static int cameraPosition(int playerPosition, int playerSize, int viewSize,
+            int worldSize) {
+        int centered = playerPosition + playerSize / 2 - viewSize / 2;
+        return Math.min(Math.max(centered, 0), Math.max(worldSize - viewSize, 0));
+    }
+
+    /*
+     * The following methods are getter methods for the size of the world and its map.
+     */
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    TileMap getMap() {
+        return map;
+    }
+
+    Archetypes getArchetypes() {
+        return archetypes;
+    }
+
+    /*
+     * Determines if the segment from (x0, y0) to (x1, y1) crosses a wall of the map (if there is
+     * one).
+     */
+    public boolean segmentHitsWall(double x0, double y0, double x1, double y1) {
+        return map != null && map.segmentHitsSolid(x0, y0, x1, y1);
+    }
+
+    /*
+     * Determines if nothing blocks the straight line between the given points.
+     */
+    public boolean hasLineOfSight(int x0, int y0, int x1, int y1) {
+        return !segmentHitsWall(x0, y0, x1, y1);
+    }
+
+    /*
+     * The following methods return the live collections, so that ticking does not copy them.
+     */
+
+    List<Enemy> enemies() {
+        return enemies;
+    }
+
+    ProjectileStore getProjectileStore() {
+        return projectiles;
+    }
+}
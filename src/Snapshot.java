@@ -0,0 +1,190 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.util.Arrays;
+
+/*
+ * Copy of everything needed to paint one frame of the game: the position of the camera, the
+ * position of every visible wall tile, the position, size, and fade-in stage of every visible
+ * entity, and the position of every visible projectile. All positions are in world coordinates;
+ * painting subtracts the camera's position.
+ *
+ * The game loop fills a Snapshot after every tick (see Simulation.writeSnapshot) and hands it to
+ * whichever thread paints through a SnapshotBuffer, so painting never touches the live game
+ * state. Positions are stored both before and after the tick, so that painting can interpolate.
+ *
+ * Snapshots are reused from frame to frame. Their arrays grow (by doubling) when needed but never
+ * shrink, so neither filling nor painting a snapshot allocates once the game has reached its peak
+ * size.
+ */
+public class Snapshot {
+
+    // Kind of the player. Enemies come after it, one kind per archetype (see enemyKind).
+    public static final int KIND_PLAYER = 0;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final Color WALL_COLOR = Color.DARK_GRAY;
+
+    private int cameraX;
+    private int cameraY;
+    private int prevCameraX;
+    private int prevCameraY;
+
+    private int tileCount;
+    private int[] tileX = new int[INITIAL_CAPACITY];
+    private int[] tileY = new int[INITIAL_CAPACITY];
+    private int[] tileSize = new int[INITIAL_CAPACITY];
+
+    private int entityCount;
+    private int[] kind = new int[INITIAL_CAPACITY];
+    private int[] x = new int[INITIAL_CAPACITY];
+    private int[] y = new int[INITIAL_CAPACITY];
+    private int[] prevX = new int[INITIAL_CAPACITY];
+    private int[] prevY = new int[INITIAL_CAPACITY];
+    private int[] width = new int[INITIAL_CAPACITY];
+    private int[] height = new int[INITIAL_CAPACITY];
+    private int[] initStage = new int[INITIAL_CAPACITY];
+
+    private int projectileCount;
+    private double[] projX = new double[INITIAL_CAPACITY];
+    private double[] projY = new double[INITIAL_CAPACITY];
+    private double[] projPrevX = new double[INITIAL_CAPACITY];
+    private double[] projPrevY = new double[INITIAL_CAPACITY];
+    private int[] projSprite = new int[INITIAL_CAPACITY];
+
+    /*
+     * Returns the kind of an enemy of the given archetype (see Archetypes).
+     */
+    public static int enemyKind(int archetype) {
+        return KIND_PLAYER + 1 + archetype;
+    }
+
+    /*
+     * Empties the snapshot and records the camera's position before and after the tick.
+     */
+    public void reset(int cameraX, int cameraY, int prevCameraX, int prevCameraY) {
+        this.cameraX = cameraX;
+        this.cameraY = cameraY;
+        this.prevCameraX = prevCameraX;
+        this.prevCameraY = prevCameraY;
+        tileCount = 0;
+        entityCount = 0;
+        projectileCount = 0;
+    }
+
+    /*
+     * Adds a solid size x size tile of the map with its top-left corner at (tx, ty).
+     */
+    public void addTile(int tx, int ty, int size) {
+        if (tileCount == tileX.length) {
+            int capacity = 2 * tileX.length;
+            tileX = Arrays.copyOf(tileX, capacity);
+            tileY = Arrays.copyOf(tileY, capacity);
+            tileSize = Arrays.copyOf(tileSize, capacity);
+        }
+        tileX[tileCount] = tx;
+        tileY[tileCount] = ty;
+        tileSize[tileCount] = size;
+        tileCount++;
+    }
+
+    /*
+     * Adds an entity of the given kind. initStage is the enemy's initialization stage (see Enemy),
+     * or Enemy.TICKS_TO_INITIALIZE once it is fully initialized.
+     */
+    public void addEntity(int entityKind, int px, int py, int prevPx, int prevPy, int w, int h,
+            int stage) {
+        if (entityCount == kind.length) {
+            int capacity = 2 * kind.length;
+            kind = Arrays.copyOf(kind, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            prevX = Arrays.copyOf(prevX, capacity);
+            prevY = Arrays.copyOf(prevY, capacity);
+            width = Arrays.copyOf(width, capacity);
+            height = Arrays.copyOf(height, capacity);
+            initStage = Arrays.copyOf(initStage, capacity);
+        }
+        int i = entityCount;
+        entityCount++;
+        kind[i] = entityKind;
+        x[i] = px;
+        y[i] = py;
+        prevX[i] = prevPx;
+        prevY[i] = prevPy;
+        width[i] = w;
+        height[i] = h;
+        initStage[i] = stage;
+    }
+
+    /*
+     * Adds a projectile whose start was at (prevStartX, prevStartY) before the tick and is at
+     * (startX, startY) after it.
+     */
+    public void addProjectile(double startX, double startY, double prevStartX, double prevStartY,
+            double direction, boolean enemy) {
+        if (projectileCount == projX.length) {
+            int capacity = 2 * projX.length;
+            projX = Arrays.copyOf(projX, capacity);
+            projY = Arrays.copyOf(projY, capacity);
+            projPrevX = Arrays.copyOf(projPrevX, capacity);
+            projPrevY = Arrays.copyOf(projPrevY, capacity);
+            projSprite = Arrays.copyOf(projSprite, capacity);
+        }
+        int i = projectileCount;
+        projectileCount++;
+        projX[i] = startX;
+        projY[i] = startY;
+        projPrevX[i] = prevStartX;
+        projPrevY[i] = prevStartY;
+        projSprite[i] = SpriteAtlas.projectileSprite(direction, enemy);
+    }
+
+    /*
+     * Draws every wall tile, then every entity, then every projectile, part of the way (alpha, from
+     * 0 to 1) between their positions before and after the tick.
+     *
+     * The player is drawn as a black square, melee enemies as red squares, and ranged enemies as
+     * yellow squares. During the process of initialization, an enemy's color is initially clear and
+     * becomes more opaque over the course of initialization, creating a fade-in effect. Projectiles
+     * shot by a ranged enemy are red, while those shot by the player are green.
+     *
+     * Walls are dark gray. Everything else is copied from the SpriteAtlas, so painting does not
+     * depend on how complicated the sprites are.
+     */
+    public void paint(Graphics g, double alpha) {
+        SpriteAtlas atlas = SpriteAtlas.getInstance();
+        int camX = getCameraX(alpha);
+        int camY = getCameraY(alpha);
+        g.setColor(WALL_COLOR);
+        for (int i = 0; i < tileCount; i++) {
+            g.fillRect(tileX[i] - camX, tileY[i] - camY, tileSize[i], tileSize[i]);
+        }
+        for (int i = 0; i < entityCount; i++) {
+            atlas.drawEntity(g, kind[i], initStage[i], interpolate(prevX[i], x[i], alpha) - camX,
+                    interpolate(prevY[i], y[i], alpha) - camY, width[i], height[i]);
+        }
+        for (int i = 0; i < projectileCount; i++) {
+            double startX = projPrevX[i] + (projX[i] - projPrevX[i]) * alpha;
+            double startY = projPrevY[i] + (projY[i] - projPrevY[i]) * alpha;
+            atlas.drawProjectile(g, projSprite[i], (int) Math.round(startX) - camX,
+                    (int) Math.round(startY) - camY);
+        }
+    }
+
+    /*
+     * Returns the position of the camera (i.e. the world coordinates of the top-left corner of the
+     * view) the given fraction (from 0 to 1) of the way through the tick.
+     */
+    public int getCameraX(double alpha) {
+        return interpolate(prevCameraX, cameraX, alpha);
+    }
+
+    public int getCameraY(double alpha) {
+        return interpolate(prevCameraY, cameraY, alpha);
+    }
+
+    private static int interpolate(int from, int to, double alpha) {
+        return (int) Math.round(from + (to - from) * alpha);
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Hands Snapshots from the game loop (the producer) to the thread that paints them (the consumer:
+ * the event dispatch thread, or the game loop itself when rendering actively) without locking,
+ * using three snapshots in rotation.
+ *
+ * At any time, the producer owns one snapshot (the back snapshot, which it fills), the consumer
+ * owns another (the front snapshot, which it paints), and the third is held in between.
+ * Publishing swaps the back snapshot with the one in between, and acquiring swaps the front
+ * snapshot with the one in between if it is newer than the front one. Each swap is a single
+ * atomic exchange, so neither side ever waits for the other, and neither ever sees a snapshot
+ * while the other is using it.
+ *
+ * Only one thread may call back() and publish(), and only one thread (which may be the same one)
+ * may call acquire().
+ */
+public class SnapshotBuffer {
+
+    // The index (0-2) of the snapshot in between, plus FRESH if it has been published but not yet
+    // acquired.
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final Snapshot[] snapshots = new Snapshot[] {
+        new Snapshot(), new Snapshot(), new Snapshot()
+    };
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    // Only used by the producer
+    private int back = 0;
+
+    // Only used by the consumer
+    private int front = 2;
+
+    /*
+     * Returns the snapshot that the producer should fill next.
+     */
+    public Snapshot back() {
+        return snapshots[back];
+    }
+
+    /*
+     * Makes the back snapshot (which the producer has just filled) available to the consumer.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /*
+     * Returns the most recently published snapshot. It stays valid (and unchanged) until the next
+     * call to acquire().
+     */
+    public Snapshot acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return snapshots[front];
+    }
+}
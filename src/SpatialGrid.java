@@ -0,0 +1,304 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Uniform grid over the court that buckets entities by position, so that collision and hit tests
+ * only have to look at entities near a given area instead of every entity in the game.
+ *
+ * Each entity is stored in exactly one cell: the cell containing its top-left corner. A query for a
+ * rectangle therefore also looks maxEntitySize pixels to the left of and above the rectangle, which
+ * catches every entity that could overlap it. The grid is kept up to date incrementally: whenever
+ * an entity's position changes, update() moves it to its new cell (which is usually the same one).
+ *
+ * Cells are grouped into square pages of PAGE_SIDE x PAGE_SIDE cells, and the grid itself only
+ * keeps one reference per page. A grid of up to EAGER_CELLS cells creates and keeps every page up
+ * front, so that moving entities never allocates. In a larger grid, a page (with the lists of all
+ * of its cells) is only in place while there are entities in it: it is taken from a list of spare
+ * pages when an entity enters it, and put back when its last entity leaves. A grid over a large
+ * world therefore only uses memory for as many pages as have held entities at once, plus one
+ * reference per page (e.g. about 100,000 references for a world of 200,000 x 200,000 pixels).
+ * Since every page in place holds at least one entity, reserve() can create enough spare pages
+ * ahead of time (e.g. when a wave starts) that moving entities does not allocate either.
+ *
+ * The grid can also find the k entities nearest to a point (see nearest), which enemies use to
+ * keep their distance from each other. Unlike query(), nearest() fills lists given by the caller,
+ * so several threads can call it at once as long as no entity moves in the meantime.
+ */
+public class SpatialGrid {
+
+    // Initial capacity of each cell. Since entities do not overlap, a cell usually holds at most
+    // four entities whose size is half the cell size, so most cells never have to grow.
+    private static final int CELL_CAPACITY = 4;
+
+    private static final int EAGER_CELLS = 1 << 16;
+
+    private static final int PAGE_BITS = 4;
+    private static final int PAGE_SIDE = 1 << PAGE_BITS;
+
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int maxEntitySize;
+
+    // Indexed by page row * pageColumns + page column. null for pages without entities in a grid
+    // that is not eager.
+    private final Page[] pages;
+    private final int pageColumns;
+    private final boolean eager;
+
+    // Pages without entities that can be reused, linked through Page.nextSpare, and the number of
+    // pages that have been created (in place or spare)
+    private Page spare = null;
+    private int created = 0;
+
+    /*
+     * The lists of the cells of one page, indexed by row * PAGE_SIDE + column within the page.
+     */
+    private static class Page {
+        private final List<List<Entity>> cells = new ArrayList<>(PAGE_SIDE * PAGE_SIDE);
+
+        // Number of entities in all of the cells
+        private int size = 0;
+
+        private Page nextSpare = null;
+
+        Page() {
+            for (int i = 0; i < PAGE_SIDE * PAGE_SIDE; i++) {
+                cells.add(new ArrayList<Entity>(CELL_CAPACITY));
+            }
+        }
+    }
+
+    // Reused by query() so that queries do not allocate.
+    private final List<Entity> result = new ArrayList<>(4 * CELL_CAPACITY);
+
+    /*
+     * Creates an empty grid covering a width x height area. maxEntitySize must be at least the
+     * width and height of every entity that is inserted.
+     */
+    SpatialGrid(int width, int height, int cellSize, int maxEntitySize) {
+        this.cellSize = cellSize;
+        this.columns = width / cellSize + 1;
+        this.rows = height / cellSize + 1;
+        this.maxEntitySize = maxEntitySize;
+
+        pageColumns = (columns + PAGE_SIDE - 1) / PAGE_SIDE;
+        int pageRows = (rows + PAGE_SIDE - 1) / PAGE_SIDE;
+        pages = new Page[pageColumns * pageRows];
+        eager = (long) columns * rows <= EAGER_CELLS;
+        if (eager) {
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = new Page();
+            }
+            created = pages.length;
+        }
+    }
+
+    /*
+     * Creates enough spare pages that the grid can hold the given number of entities without
+     * creating any more. Each page in place holds at least one entity, and an entity moving to
+     * another page (see update) briefly holds a place in both, so one page per entity and one more
+     * are enough.
+     */
+    public void reserve(int entities) {
+        int needed = Math.min(entities + 1, pages.length);
+        while (created < needed) {
+            Page page = new Page();
+            page.nextSpare = spare;
+            spare = page;
+            created++;
+        }
+    }
+
+    /*
+     * Adds the entity to the cell containing its current position.
+     */
+    public void insert(Entity e) {
+        int cell = cellOf(e.getPx(), e.getPy());
+        add(cell, e);
+        e.setGridCell(cell);
+    }
+
+    /*
+     * Removes the entity from the grid. Does nothing if the entity is not in the grid.
+     */
+    public void remove(Entity e) {
+        int cell = e.getGridCell();
+        if (cell >= 0) {
+            remove(cell, e);
+            e.setGridCell(-1);
+        }
+    }
+
+    /*
+     * Moves the entity to the cell containing its current position, if it has changed cells. Does
+     * nothing if the entity is not in the grid.
+     */
+    public void update(Entity e) {
+        int oldCell = e.getGridCell();
+        if (oldCell < 0) {
+            return;
+        }
+        int newCell = cellOf(e.getPx(), e.getPy());
+        if (newCell != oldCell) {
+            // Added before it is removed, so that its page is kept if both cells are in it
+            add(newCell, e);
+            remove(oldCell, e);
+            e.setGridCell(newCell);
+        }
+    }
+
+    /*
+     * Returns every entity that may overlap or touch the given rectangle (edges included). Callers
+     * still have to do an exact test on each candidate.
+     *
+     * The returned list is reused by the next call, so it must not be kept or modified.
+     */
+    public List<Entity> query(int x, int y, int width, int height) {
+        result.clear();
+
+        int minColumn = clampColumn(Math.floorDiv(x - maxEntitySize, cellSize));
+        int maxColumn = clampColumn(Math.floorDiv(x + width, cellSize));
+        int minRow = clampRow(Math.floorDiv(y - maxEntitySize, cellSize));
+        int maxRow = clampRow(Math.floorDiv(y + height, cellSize));
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                List<Entity> cell = getCell(column, row);
+                if (cell != null) {
+                    for (int i = 0; i < cell.size(); i++) {
+                        result.add(cell.get(i));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Fills the given list with the (at most) k entities whose centers are nearest to (x, y),
+     * nearest first, among those whose centers are within the given radius of it. The given entity
+     * (which may be null) is left out. distances must have room for k elements, and is used to
+     * hold the squared distance to each entity found.
+     */
+    public void nearest(int x, int y, int radius, int k, Entity exclude, List<Entity> neighbors,
+            int[] distances) {
+        neighbors.clear();
+
+        int minColumn = clampColumn(Math.floorDiv(x - radius - maxEntitySize, cellSize));
+        int maxColumn = clampColumn(Math.floorDiv(x + radius, cellSize));
+        int minRow = clampRow(Math.floorDiv(y - radius - maxEntitySize, cellSize));
+        int maxRow = clampRow(Math.floorDiv(y + radius, cellSize));
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                List<Entity> cell = getCell(column, row);
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    Entity e = cell.get(i);
+                    int dx = e.getPx() + e.getWidth() / 2 - x;
+                    int dy = e.getPy() + e.getHeight() / 2 - y;
+                    if (e == exclude || Math.abs(dx) > radius || Math.abs(dy) > radius) {
+                        continue;
+                    }
+                    int distance = dx * dx + dy * dy;
+                    if (distance <= radius * radius) {
+                        insertNearest(e, distance, k, neighbors, distances);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Inserts the entity into the given list in order of distance, dropping the farthest one if
+     * the list already holds k entities.
+     */
+    private static void insertNearest(Entity e, int distance, int k, List<Entity> neighbors,
+            int[] distances) {
+        int count = neighbors.size();
+        if (count == k) {
+            if (distance >= distances[k - 1]) {
+                return;
+            }
+            neighbors.remove(--count);
+        }
+        int j = count;
+        while (j > 0 && distances[j - 1] > distance) {
+            distances[j] = distances[j - 1];
+            j--;
+        }
+        distances[j] = distance;
+        neighbors.add(j, e);
+    }
+
+    /*
+     * Returns the list of the cell in the given column and row, or null if its page has not been
+     * created.
+     */
+    private List<Entity> getCell(int column, int row) {
+        Page page = pages[(row >> PAGE_BITS) * pageColumns + (column >> PAGE_BITS)];
+        if (page == null) {
+            return null;
+        }
+        return page.cells.get((row & (PAGE_SIDE - 1)) * PAGE_SIDE + (column & (PAGE_SIDE - 1)));
+    }
+
+    /*
+     * Adds the entity to the cell with the given index, creating its page if needed.
+     */
+    private void add(int cell, Entity e) {
+        int column = cell % columns;
+        int row = cell / columns;
+        int index = (row >> PAGE_BITS) * pageColumns + (column >> PAGE_BITS);
+        if (pages[index] == null) {
+            if (spare != null) {
+                pages[index] = spare;
+                spare = spare.nextSpare;
+                pages[index].nextSpare = null;
+            } else {
+                pages[index] = new Page();
+                created++;
+            }
+        }
+        getCell(column, row).add(e);
+        pages[index].size++;
+    }
+
+    /*
+     * Removes the entity from the cell with the given index, giving its page back to the spare
+     * pages if it is left empty (unless the grid is eager).
+     */
+    private void remove(int cell, Entity e) {
+        int column = cell % columns;
+        int row = cell / columns;
+        int index = (row >> PAGE_BITS) * pageColumns + (column >> PAGE_BITS);
+        getCell(column, row).remove(e);
+        pages[index].size--;
+        if (pages[index].size == 0 && !eager) {
+            pages[index].nextSpare = spare;
+            spare = pages[index];
+            pages[index] = null;
+        }
+    }
+
+    /*
+     * Returns the index of the cell containing the given point. Points outside of the grid are
+     * assigned to the nearest cell along the edge.
+     */
+    private int cellOf(int x, int y) {
+        int column = clampColumn(Math.floorDiv(x, cellSize));
+        int row = clampRow(Math.floorDiv(y, cellSize));
+        return row * columns + column;
+    }
+
+    private int clampColumn(int column) {
+        return Math.min(Math.max(column, 0), columns - 1);
+    }
+
+    private int clampRow(int row) {
+        return Math.min(Math.max(row, 0), rows - 1);
+    }
+}
@@ -0,0 +1,151 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/*
+ * Pre-rendered images of everything drawn on the Court, all kept in one image (the atlas), so
+ * that painting a frame is nothing but copying rectangles out of it.
+ *
+ * The atlas holds one sprite for each kind of entity (see Snapshot), i.e. the player and each
+ * enemy archetype in its own color, at each stage of initialization, including every step of an
+ * enemy's fade-in, followed by one sprite for each color of projectile at each of ANGLES
+ * directions. A projectile is drawn with the sprite whose direction is closest to its own. Since
+ * sprites are only drawn once, they can be drawn with antialiasing at no cost per frame.
+ *
+ * The atlas is created in a format compatible with the screen, so copying from it is as fast as
+ * possible (and usually done by the graphics card).
+ */
+public class SpriteAtlas {
+
+    // Number of directions each projectile sprite is pre-rendered in
+    public static final int ANGLES = 64;
+
+    private static final int STAGES = Enemy.TICKS_TO_INITIALIZE + 1;
+    private static final int ENTITY_CELL = Math.max(Player.SIZE, Enemy.SIZE);
+
+    // Projectile sprites are centered on the start of the projectile, so each one is big enough
+    // for a projectile pointing in any direction.
+    private static final int PROJECTILE_CENTER = Projectile.LENGTH + 1;
+    private static final int PROJECTILE_CELL = 2 * PROJECTILE_CENTER + 1;
+    private static final int PROJECTILES_PER_ROW = 16;
+
+    private static final SpriteAtlas INSTANCE = new SpriteAtlas();
+
+    private final BufferedImage atlas;
+
+    // Top of the first row of projectile sprites, below the rows of entity sprites
+    private final int projectileTop;
+
+    private SpriteAtlas() {
+        Archetypes archetypes = Archetypes.getDefault();
+        projectileTop = Snapshot.enemyKind(archetypes.count()) * ENTITY_CELL;
+        int width = Math.max(STAGES * ENTITY_CELL, PROJECTILES_PER_ROW * PROJECTILE_CELL);
+        int height = projectileTop + 2 * ANGLES / PROJECTILES_PER_ROW * PROJECTILE_CELL;
+        if (GraphicsEnvironment.isHeadless()) {
+            atlas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        } else {
+            atlas = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration()
+                    .createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+
+        Graphics2D g = atlas.createGraphics();
+        try {
+            renderEntities(g, Snapshot.KIND_PLAYER, Player.PLAYER_COLOR);
+            for (int a = 0; a < archetypes.count(); a++) {
+                renderEntities(g, Snapshot.enemyKind(a), archetypes.getColor(a));
+            }
+            renderProjectiles(g, false, Projectile.PLAYER_COLOR);
+            renderProjectiles(g, true, Projectile.ENEMY_COLOR);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    public static SpriteAtlas getInstance() {
+        return INSTANCE;
+    }
+
+    /*
+     * Draws a square of the given color for every stage of initialization. During initialization,
+     * the color is initially clear and becomes more opaque with each stage, creating a fade-in
+     * effect.
+     */
+    private void renderEntities(Graphics2D g, int kind, Color color) {
+        for (int stage = 0; stage < STAGES; stage++) {
+            if (stage < Enemy.TICKS_TO_INITIALIZE) {
+                int opacity = (int) ((float) stage / Enemy.TICKS_TO_INITIALIZE * 255);
+                g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), opacity));
+            } else {
+                g.setColor(color);
+            }
+            g.fillRect(stage * ENTITY_CELL, kind * ENTITY_CELL, ENTITY_CELL, ENTITY_CELL);
+        }
+    }
+
+    /*
+     * Draws a line of length Projectile.LENGTH, starting at the center of its cell, for each of
+     * the ANGLES directions.
+     */
+    private void renderProjectiles(Graphics2D g, boolean enemy, Color color) {
+        g.setColor(color);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (int angle = 0; angle < ANGLES; angle++) {
+            int sprite = projectileSprite(angle, enemy);
+            int centerX = projectileLeft(sprite) + PROJECTILE_CENTER;
+            int centerY = projectileTop(sprite) + PROJECTILE_CENTER;
+            double direction = 2 * Math.PI * angle / ANGLES;
+            g.drawLine(centerX, centerY,
+                    centerX + (int) Math.round(Math.cos(direction) * Projectile.LENGTH),
+                    centerY + (int) Math.round(Math.sin(direction) * Projectile.LENGTH));
+        }
+    }
+
+    /*
+     * Returns the sprite to use for a projectile with the given direction (in radians).
+     */
+    public static int projectileSprite(double direction, boolean enemy) {
+        int angle = (int) Math.round(direction / (2 * Math.PI) * ANGLES);
+        return projectileSprite(Math.floorMod(angle, ANGLES), enemy);
+    }
+
+    private static int projectileSprite(int angle, boolean enemy) {
+        return enemy ? ANGLES + angle : angle;
+    }
+
+    private static int projectileLeft(int sprite) {
+        return sprite % PROJECTILES_PER_ROW * PROJECTILE_CELL;
+    }
+
+    private int projectileTop(int sprite) {
+        return projectileTop + sprite / PROJECTILES_PER_ROW * PROJECTILE_CELL;
+    }
+
+    /*
+     * Draws a width x height entity of the given kind and initialization stage with its top-left
+     * corner at (x, y).
+     */
+    public void drawEntity(Graphics g, int kind, int stage, int x, int y, int width, int height) {
+        int left = Math.min(Math.max(stage, 0), Enemy.TICKS_TO_INITIALIZE) * ENTITY_CELL;
+        int top = kind * ENTITY_CELL;
+        g.drawImage(atlas, x, y, x + width, y + height,
+                left, top, left + Math.min(width, ENTITY_CELL), top + Math.min(height, ENTITY_CELL),
+                null);
+    }
+
+    /*
+     * Draws the given projectile sprite (see projectileSprite) starting at (x, y).
+     */
+    public void drawProjectile(Graphics g, int sprite, int x, int y) {
+        int left = projectileLeft(sprite);
+        int top = projectileTop(sprite);
+        int dx = x - PROJECTILE_CENTER;
+        int dy = y - PROJECTILE_CENTER;
+        g.drawImage(atlas, dx, dy, dx + PROJECTILE_CELL, dy + PROJECTILE_CELL,
+                left, top, left + PROJECTILE_CELL, top + PROJECTILE_CELL, null);
+    }
+}
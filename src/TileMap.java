@@ -0,0 +1,376 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * A map of static obstacles, read from a file a piece at a time, so that maps can be much larger
+ * than what fits (or should be kept) in memory.
+ *
+ * The map is a grid of square tiles, each either empty or solid (a wall). Tiles are grouped into
+ * square chunks, which are the unit in which the map is read. A map file (see MapGenerator)
+ * consists of:
+ *
+ *   - a header of six big-endian ints: MAGIC, VERSION, the size of a tile (in pixels), the number
+ *     of tiles per side of a chunk, and the width and height of the map (in chunks);
+ *   - then every chunk in row-major order, each one being one byte per tile (0 for empty, anything
+ *     else for solid), also in row-major order.
+ *
+ * Only the header is read when the map is opened. The rest of the file is memory-mapped, which
+ * reads nothing by itself: the operating system pages in the parts of the file that are used, and
+ * can drop them again whenever it needs the memory. pageAround() copies the chunks within
+ * PAGE_RADIUS chunks of the player out of the mapping, into the PAGED_CHUNKS slots, where they
+ * stay until the player moves away from them. A loaded chunk is packed into bitsets, one bit per
+ * tile, with each row of the chunk taking wordsPerRow longs. Tiles in any other chunk (e.g. near
+ * enemies far from the player) are read straight from the mapping, one byte per tile, so lookups
+ * all over the world never copy whole chunks or push the chunks around the player out.
+ *
+ * The memory used therefore does not depend on the size of the map, and looking up tiles does not
+ * allocate, even when chunks are loaded.
+ *
+ * The size of the map (in pixels) must fit in an int, and so must its number of chunks, which
+ * open() checks.
+ *
+ * Segments (shots and lines of sight) are tested against the map by walking through exactly the
+ * tiles they cross, in order, one tile per step (a DDA traversal), stopping at the first solid one.
+ */
+public class TileMap {
+
+    public static final int MAGIC = 0x47534D50;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 6 * Integer.BYTES;
+
+    // pageAround keeps every chunk within this many chunks of the player loaded, which takes
+    // PAGED_CHUNKS slots.
+    private static final int PAGE_RADIUS = 1;
+    private static final int PAGED_CHUNKS = (2 * PAGE_RADIUS + 1) * (2 * PAGE_RADIUS + 1);
+
+    // Largest number of tiles per side of a chunk, which keeps the loaded chunks small
+    private static final int MAX_CHUNK_TILES = 256;
+
+    // Kept in constants, so that they are interned when the class is loaded rather than when a
+    // method of the class is first fully optimized (see Simulation)
+    private static final String SHORT_ERROR = "The map file is too short.";
+    private static final String FORMAT_ERROR = "Not a map file, or an unsupported version.";
+    private static final String HEADER_ERROR = "The map file has an invalid header.";
+    private static final String SIZE_ERROR = "The map in the map file is too large.";
+
+    private final int tileSize;
+    private final int chunkTiles;
+    private final int widthInChunks;
+    private final int heightInChunks;
+    private final int chunkBytes;
+    private final int wordsPerRow;
+    private final int slotWords;
+
+    // The chunks of the file, mapped in regions of up to chunksPerRegion chunks each (since a
+    // single mapping cannot be larger than Integer.MAX_VALUE bytes). Shared between copies, which
+    // only use absolute reads.
+    private final MappedByteBuffer[] regions;
+    private final int chunksPerRegion;
+
+    // The loaded chunks, one per slot of slotWords longs. chunkIndex is -1 for unused slots.
+    private final long[] loaded;
+    private final int[] chunkIndex = new int[PAGED_CHUNKS];
+
+    // The chunks that the last call to pageAround wanted loaded (-1 for those outside of the map),
+    // and the chunk column and row it was centered on
+    private final int[] wanted = new int[PAGED_CHUNKS];
+    private int pagedColumn = Integer.MIN_VALUE;
+    private int pagedRow = Integer.MIN_VALUE;
+
+    // The slot used by the last lookup, which is checked first, since consecutive lookups are
+    // usually in the same chunk.
+    private int lastSlot = 0;
+
+    /*
+     * Creates a map read from the given regions, with no chunks loaded yet.
+     */
+    private TileMap(MappedByteBuffer[] regions, int chunksPerRegion, int tileSize, int chunkTiles,
+            int widthInChunks, int heightInChunks) {
+        this.regions = regions;
+        this.chunksPerRegion = chunksPerRegion;
+        this.tileSize = tileSize;
+        this.chunkTiles = chunkTiles;
+        this.widthInChunks = widthInChunks;
+        this.heightInChunks = heightInChunks;
+        this.chunkBytes = chunkTiles * chunkTiles;
+        this.wordsPerRow = (chunkTiles + Long.SIZE - 1) / Long.SIZE;
+        this.slotWords = chunkTiles * wordsPerRow;
+        this.loaded = new long[PAGED_CHUNKS * slotWords];
+        for (int i = 0; i < PAGED_CHUNKS; i++) {
+            chunkIndex[i] = -1;
+        }
+    }
+
+    /*
+     * Opens the map file at the given path, reads its header, and maps the rest of it. Throws an
+     * IOException if the file cannot be read or is not a valid map file.
+     */
+    public static TileMap open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException(SHORT_ERROR);
+                }
+            }
+            header.flip();
+            int magic = header.getInt();
+            int version = header.getInt();
+            int tileSize = header.getInt();
+            int chunkTiles = header.getInt();
+            int widthInChunks = header.getInt();
+            int heightInChunks = header.getInt();
+
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException(FORMAT_ERROR);
+            }
+            if (tileSize <= 0 || chunkTiles <= 0 || chunkTiles > MAX_CHUNK_TILES
+                    || widthInChunks <= 0 || heightInChunks <= 0) {
+                throw new IOException(HEADER_ERROR);
+            }
+            long chunkSize = (long) chunkTiles * tileSize;
+            long chunkCount = (long) widthInChunks * heightInChunks;
+            if (widthInChunks * chunkSize > Integer.MAX_VALUE
+                    || heightInChunks * chunkSize > Integer.MAX_VALUE
+                    || chunkCount > Integer.MAX_VALUE) {
+                throw new IOException(SIZE_ERROR);
+            }
+            int chunkBytes = chunkTiles * chunkTiles;
+            if (channel.size() < HEADER_BYTES + chunkCount * chunkBytes) {
+                throw new IOException(SHORT_ERROR);
+            }
+
+            // A mapping stays valid after its channel is closed.
+            int chunksPerRegion = Integer.MAX_VALUE / chunkBytes;
+            MappedByteBuffer[] regions =
+                    new MappedByteBuffer[(int) ((chunkCount - 1) / chunksPerRegion + 1)];
+            for (int r = 0; r < regions.length; r++) {
+                long first = (long) r * chunksPerRegion;
+                long count = Math.min(chunksPerRegion, chunkCount - first);
+                regions[r] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + first * chunkBytes, count * chunkBytes);
+            }
+            return new TileMap(regions, chunksPerRegion, tileSize, chunkTiles, widthInChunks,
+                    heightInChunks);
+        }
+    }
+
+    /*
+     * Returns another TileMap for the same file, with its own (initially empty) set of loaded
+     * chunks. The file is not mapped again. Since a TileMap keeps track of which chunks it has
+     * loaded, each thread that reads the map needs its own copy.
+     */
+    public TileMap copy() {
+        return new TileMap(regions, chunksPerRegion, tileSize, chunkTiles, widthInChunks,
+                heightInChunks);
+    }
+
+    /*
+     * Determines if the tile containing the given point is solid. Points outside of the map are
+     * never solid (the edges of the world are handled separately).
+     */
+    public boolean isSolid(int x, int y) {
+        if (x < 0 || y < 0) {
+            return false;
+        }
+        return isSolidTile(x / tileSize, y / tileSize);
+    }
+
+    /*
+     * Determines if the tile in the given column and row is solid. Tiles outside of the map are
+     * never solid.
+     */
+    private boolean isSolidTile(int column, int row) {
+        if (column < 0 || row < 0 || column >= widthInChunks * chunkTiles
+                || row >= heightInChunks * chunkTiles) {
+            return false;
+        }
+        int index = row / chunkTiles * widthInChunks + column / chunkTiles;
+        int r = row % chunkTiles;
+        int c = column % chunkTiles;
+        int slot = slotOf(index);
+        if (slot < 0) {
+            return regions[index / chunksPerRegion].get(
+                    index % chunksPerRegion * chunkBytes + r * chunkTiles + c) != 0;
+        }
+        long word = loaded[slot * slotWords + r * wordsPerRow + c / Long.SIZE];
+        return (word & (1L << (c % Long.SIZE))) != 0;
+    }
+
+    /*
+     * Determines if the segment from (x0, y0) to (x1, y1) crosses or touches a solid tile.
+     *
+     * Starting from the tile containing (x0, y0), each step moves to the next tile the segment
+     * enters: across a vertical tile edge if the segment reaches one before the next horizontal
+     * edge, and across a horizontal one otherwise. tMaxX and tMaxY are how far along the segment
+     * (from 0 to 1) the next vertical and horizontal edges are, and tDeltaX and tDeltaY are how far
+     * apart the edges are. The segment ends in the tile containing (x1, y1), so the number of steps
+     * is known in advance.
+     */
+    public boolean segmentHitsSolid(double x0, double y0, double x1, double y1) {
+        int column = (int) Math.floor(x0 / tileSize);
+        int row = (int) Math.floor(y0 / tileSize);
+        int endColumn = (int) Math.floor(x1 / tileSize);
+        int endRow = (int) Math.floor(y1 / tileSize);
+
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        double tDeltaX = dx != 0 ? tileSize / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = dy != 0 ? tileSize / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        double tMaxX = dx != 0
+                ? ((dx > 0 ? column + 1 : column) * (double) tileSize - x0) / dx
+                : Double.POSITIVE_INFINITY;
+        double tMaxY = dy != 0
+                ? ((dy > 0 ? row + 1 : row) * (double) tileSize - y0) / dy
+                : Double.POSITIVE_INFINITY;
+
+        int steps = Math.abs(endColumn - column) + Math.abs(endRow - row);
+        for (int i = 0; i <= steps; i++) {
+            if (isSolidTile(column, row)) {
+                return true;
+            }
+            if (tMaxX < tMaxY) {
+                column += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                row += stepY;
+                tMaxY += tDeltaY;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Determines if any solid tile overlaps the given box (edges excluded).
+     */
+    public boolean boxHitsSolid(int x, int y, int width, int height) {
+        int right = x + width - 1;
+        int bottom = y + height - 1;
+        for (int ty = y; ty <= bottom; ty = nextTile(ty)) {
+            for (int tx = x; tx <= right; tx = nextTile(tx)) {
+                if (isSolid(tx, ty)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Returns the first coordinate of the tile after the one containing the given coordinate.
+     */
+    private int nextTile(int coordinate) {
+        return Math.floorDiv(coordinate, tileSize) * tileSize + tileSize;
+    }
+
+    /*
+     * Makes sure that every chunk within PAGE_RADIUS chunks of the given point is loaded, and
+     * frees the slots of the other chunks. Does nothing if the point is in the same chunk as last
+     * time.
+     */
+    public void pageAround(int x, int y) {
+        int chunkSize = tileSize * chunkTiles;
+        int centerColumn = Math.floorDiv(x, chunkSize);
+        int centerRow = Math.floorDiv(y, chunkSize);
+        if (centerColumn == pagedColumn && centerRow == pagedRow) {
+            return;
+        }
+        pagedColumn = centerColumn;
+        pagedRow = centerRow;
+
+        int count = 0;
+        for (int row = centerRow - PAGE_RADIUS; row <= centerRow + PAGE_RADIUS; row++) {
+            for (int column = centerColumn - PAGE_RADIUS; column <= centerColumn + PAGE_RADIUS;
+                    column++) {
+                boolean inMap = row >= 0 && row < heightInChunks && column >= 0
+                        && column < widthInChunks;
+                wanted[count] = inMap ? row * widthInChunks + column : -1;
+                count++;
+            }
+        }
+
+        // Frees the slots of the chunks that are no longer wanted, then loads the wanted chunks
+        // that are not loaded yet into free slots (of which there are always enough).
+        for (int i = 0; i < PAGED_CHUNKS; i++) {
+            if (chunkIndex[i] >= 0 && !isWanted(chunkIndex[i])) {
+                chunkIndex[i] = -1;
+            }
+        }
+        int free = 0;
+        for (int k = 0; k < PAGED_CHUNKS; k++) {
+            if (wanted[k] >= 0 && slotOf(wanted[k]) < 0) {
+                while (chunkIndex[free] >= 0) {
+                    free++;
+                }
+                load(wanted[k], free);
+            }
+        }
+    }
+
+    private boolean isWanted(int index) {
+        for (int k = 0; k < PAGED_CHUNKS; k++) {
+            if (wanted[k] == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Returns the slot holding the chunk with the given index, or -1 if the chunk is not loaded.
+     */
+    private int slotOf(int index) {
+        if (chunkIndex[lastSlot] == index) {
+            return lastSlot;
+        }
+        for (int i = 0; i < PAGED_CHUNKS; i++) {
+            if (chunkIndex[i] == index) {
+                lastSlot = i;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Copies the chunk with the given index out of the mapping into the given slot.
+     */
+    private void load(int index, int slot) {
+        MappedByteBuffer region = regions[index / chunksPerRegion];
+        int offset = index % chunksPerRegion * chunkBytes;
+        int start = slot * slotWords;
+        for (int i = 0; i < slotWords; i++) {
+            loaded[start + i] = 0;
+        }
+        for (int row = 0; row < chunkTiles; row++) {
+            for (int c = 0; c < chunkTiles; c++) {
+                if (region.get(offset + row * chunkTiles + c) != 0) {
+                    loaded[start + row * wordsPerRow + c / Long.SIZE] |= 1L << (c % Long.SIZE);
+                }
+            }
+        }
+        chunkIndex[slot] = index;
+    }
+
+    /*
+     * The following methods are getter methods for the size of the map and its tiles.
+     */
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getWidth() {
+        return widthInChunks * chunkTiles * tileSize;
+    }
+
+    public int getHeight() {
+        return heightInChunks * chunkTiles * tileSize;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * The clock of a Simulation, which runs timers after a given number of ticks. Timers are used for
+ * everything that happens after a delay: an enemy finishing its initialization, an enemy's next
+ * attack, and the start of the next wave. Each tick, advance() only looks at the timers that are
+ * due, so an enemy waiting on a timer costs nothing until the timer fires.
+ *
+ * Timers are kept in a hierarchical timing wheel with LEVELS levels of SLOTS slots each. A timer
+ * due within the current block of SLOTS ticks is kept in the bottom level, in the slot for its
+ * tick. A timer due later is kept in a higher level, in the slot for the block of ticks it falls
+ * in, and is moved down a level when that block begins. Timers due even later than the top level
+ * can hold are kept in a separate list, which is sorted into the wheel again whenever the top
+ * level wraps around. Scheduling and canceling a timer take constant time, and each timer is moved
+ * at most LEVELS times before it fires.
+ *
+ * Timers are linked into their slot through fields of the Timer itself, so scheduling a timer
+ * never allocates. Timers due on the same tick fire in an order that only depends on when each
+ * was scheduled, so a Simulation's timers always fire in the same order for the same seed.
+ */
+public class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 3;
+
+    // Slot index used for timers that are beyond the top level
+    private static final int OVERFLOW = LEVELS * SLOTS;
+
+    /*
+     * Something that happens after a delay. A timer is scheduled on at most one wheel at a time,
+     * and can be scheduled again (e.g. from fire) after it has fired or been canceled.
+     */
+    public abstract static class Timer {
+        private Timer previous;
+        private Timer next;
+        private long deadline;
+        private int slot = -1;
+
+        /*
+         * Called by TimingWheel.advance on the tick the timer is due.
+         */
+        protected abstract void fire();
+
+        public boolean isScheduled() {
+            return slot >= 0;
+        }
+    }
+
+    // The first and last timer in each slot (of every level, followed by the overflow list)
+    private final Timer[] heads = new Timer[OVERFLOW + 1];
+    private final Timer[] tails = new Timer[OVERFLOW + 1];
+
+    private long now = 0;
+
+    /*
+     * Returns the current tick, i.e. the number of times advance() has been called.
+     */
+    public long getTime() {
+        return now;
+    }
+
+    /*
+     * Schedules the timer to fire the given number of ticks from now (at least 1). A timer that is
+     * already scheduled is moved to its new time.
+     */
+    public void schedule(Timer timer, int delay) {
+        cancel(timer);
+        timer.deadline = now + Math.max(delay, 1);
+        place(timer);
+    }
+
+    /*
+     * Stops the timer from firing. Does nothing if the timer is not scheduled.
+     */
+    public void cancel(Timer timer) {
+        if (timer.slot < 0) {
+            return;
+        }
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            heads[timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        } else {
+            tails[timer.slot] = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+        timer.slot = -1;
+    }
+
+    /*
+     * Returns the number of ticks until the timer fires, or 0 if it is not scheduled.
+     */
+    public int ticksUntil(Timer timer) {
+        return timer.slot < 0 ? 0 : (int) (timer.deadline - now);
+    }
+
+    /*
+     * Advances the clock by one tick, then fires every timer that is due. A timer scheduled by one
+     * that fires is due on a later tick.
+     */
+    public void advance() {
+        now++;
+
+        // Moves the timers of each block that has just begun down to the level below it, starting
+        // from the top, so that timers can move down several levels at once.
+        if ((now & ((1L << (LEVELS * SLOT_BITS)) - 1)) == 0) {
+            cascade(OVERFLOW);
+        }
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((now & ((1L << (level * SLOT_BITS)) - 1)) == 0) {
+                cascade(level * SLOTS + (int) ((now >> (level * SLOT_BITS)) & (SLOTS - 1)));
+            }
+        }
+
+        int slot = (int) (now & (SLOTS - 1));
+        Timer timer;
+        while ((timer = heads[slot]) != null) {
+            cancel(timer);
+            timer.fire();
+        }
+    }
+
+    /*
+     * Removes every timer from the given slot and places each one again. The slot is emptied first,
+     * since timers from the overflow list may be placed back in it.
+     */
+    private void cascade(int slot) {
+        Timer timer = heads[slot];
+        heads[slot] = null;
+        tails[slot] = null;
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.previous = null;
+            timer.next = null;
+            place(timer);
+            timer = next;
+        }
+    }
+
+    /*
+     * Adds the timer to the end of the slot for its deadline, in the lowest level whose current
+     * block contains the deadline.
+     */
+    private void place(Timer timer) {
+        int slot = OVERFLOW;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = (level + 1) * SLOT_BITS;
+            if ((timer.deadline >> shift) == (now >> shift)) {
+                int index = (int) ((timer.deadline >> (level * SLOT_BITS)) & (SLOTS - 1));
+                slot = level * SLOTS + index;
+                break;
+            }
+        }
+
+        timer.slot = slot;
+        timer.previous = tails[slot];
+        timer.next = null;
+        if (tails[slot] != null) {
+            tails[slot].next = timer;
+        } else {
+            heads[slot] = timer;
+        }
+        tails[slot] = timer;
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.SplittableRandom;
+
+/*
+ * The enemies of one wave of a WaveScript, created ahead of time in the order they are to be
+ * placed, each with the tick (counted from the start of the wave) on which it joins the
+ * Simulation's queue of enemies waiting to spawn.
+ *
+ * A Simulation builds the plan for the next wave on another thread while the current wave is
+ * played, so starting a wave only takes a finished plan, and releasing enemies during the wave
+ * only reads them from the plan in order. Every enemy's random number generator is split from the
+ * plan's own generator, so a plan comes out the same no matter which thread builds it.
+ */
+public class WavePlan {
+
+    private final Enemy[] enemies;
+    private final int[] releaseTicks;
+
+    // Index of the next enemy to be released
+    private int next = 0;
+
+    /*
+     * Creates the enemies of the given wave of the script for the given level, with generators
+     * split from the given one. Only reads the Simulation's settings (its size and archetypes), so
+     * it can be called from any thread.
+     */
+    WavePlan(Simulation simulation, WaveScript script, int level, int wave,
+            SplittableRandom random) {
+        enemies = new Enemy[script.getEnemyCount(wave)];
+        releaseTicks = new int[enemies.length];
+        Archetypes archetypes = simulation.getArchetypes();
+
+        int i = 0;
+        for (int g = script.getFirstGroup(wave); g < script.getGroupEnd(wave); g++) {
+            int archetype = script.getArchetype(g);
+            int damage = script.getDamage(g, level);
+            for (int j = 0; j < script.getCount(g); j++) {
+                Enemy e;
+                if (archetypes.getBehavior(archetype) == Archetypes.MELEE) {
+                    e = new MeleeEnemy(simulation, archetype, damage, random.split());
+                } else {
+                    e = new RangedEnemy(simulation, archetype, damage, random.split());
+                }
+                int left = (int) (script.getRegionLeft(g) * e.getMaxX());
+                int top = (int) (script.getRegionTop(g) * e.getMaxY());
+                e.setSpawnRegion(left, top,
+                        Math.max((int) (script.getRegionRight(g) * e.getMaxX()), left + 1),
+                        Math.max((int) (script.getRegionBottom(g) * e.getMaxY()), top + 1));
+
+                enemies[i] = e;
+                releaseTicks[i] = script.getDelayTicks(g);
+                i++;
+            }
+        }
+    }
+
+    /*
+     * Returns the number of enemies that have not been released yet.
+     */
+    public int remaining() {
+        return enemies.length - next;
+    }
+
+    /*
+     * Returns the next enemy if it is due to be released no later than the given number of ticks
+     * after the start of the wave, or null otherwise.
+     */
+    public Enemy release(long ticks) {
+        if (next == enemies.length || releaseTicks[next] > ticks) {
+            return null;
+        }
+        Enemy e = enemies[next];
+        enemies[next] = null;
+        next++;
+        return e;
+    }
+}
@@ -0,0 +1,311 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The waves of enemies in each level, as defined in the waves.txt file in a "~"-separated format,
+ * with one group of enemies per line after a header line:
+ *
+ *     Wave~Seconds~Delay~Archetype~Count~Region~Damage~DamagePerLevel
+ *
+ * Wave is the number of the wave the group belongs to. Waves are numbered from 1, and the groups
+ * of each wave are listed together, in order of wave number. Seconds is how long the wave lasts
+ * before the next one starts, and must be the same for every group of the wave. Delay is the number
+ * of seconds after the start of the wave at which the group starts to spawn, and must not decrease
+ * from one group of a wave to the next. Archetype is the name of an archetype (see Archetypes),
+ * and Count is the number of enemies of it in the group. Region is the area that the group spawns
+ * in, given as left,top,right,bottom fractions of the world (e.g. 0,0,1,1 for the whole world, or
+ * 0,0,0.5,1 for its left half). Each enemy of the group does Damage damage in the first level, and
+ * DamagePerLevel more in each later level.
+ *
+ * A wave may have at most MAX_WAVE_ENEMIES enemies in all its groups, and Damage and
+ * DamagePerLevel may be at most MAX_DAMAGE.
+ *
+ * After the last wave, the script starts over from the first wave of the next level.
+ *
+ * Like the archetypes file, the file is read and checked once, when the game starts (see
+ * getDefault), and a file with any mistake is rejected as a whole. The groups are then compiled
+ * into one primitive array per field, indexed by group number (the order of the file), from which
+ * the Simulation builds the plan for each wave (see WavePlan).
+ */
+public class WaveScript {
+
+    public static final String PATH_TO_WAVES = "files/waves.txt";
+
+    private static final String HEADER =
+            "Wave~Seconds~Delay~Archetype~Count~Region~Damage~DamagePerLevel";
+    private static final int FIELDS = 8;
+
+    // Most enemies in one wave. Every enemy of a wave is created when its plan is built, and the
+    // Simulation reserves room for all of them (and their shots) when the wave starts.
+    static final int MAX_WAVE_ENEMIES = 100000;
+
+    // Most damage (and damage per level) of a group. The damage of later levels is capped at
+    // Integer.MAX_VALUE (see getDamage).
+    static final int MAX_DAMAGE = 1000000;
+
+    private static WaveScript defaults;
+
+    // Indexed by group
+    private final int[] delayTicks;
+    private final int[] archetype;
+    private final int[] count;
+    private final double[] regionLeft;
+    private final double[] regionTop;
+    private final double[] regionRight;
+    private final double[] regionBottom;
+    private final int[] damage;
+    private final int[] damagePerLevel;
+
+    // Indexed by wave number - 1. The groups of a wave are numbered from firstGroup[w] up to (but
+    // not including) firstGroup[w + 1].
+    private final int[] waveTicks;
+    private final int[] firstGroup;
+    private final int[] enemyCount;
+
+    private WaveScript(List<String[]> rows, List<Integer> lineNumbers, Archetypes archetypes) {
+        int groups = rows.size();
+        delayTicks = new int[groups];
+        archetype = new int[groups];
+        count = new int[groups];
+        regionLeft = new double[groups];
+        regionTop = new double[groups];
+        regionRight = new double[groups];
+        regionBottom = new double[groups];
+        damage = new int[groups];
+        damagePerLevel = new int[groups];
+
+        int[] wave = new int[groups];
+        int[] seconds = new int[groups];
+        int[] delay = new int[groups];
+        for (int g = 0; g < groups; g++) {
+            String[] fields = rows.get(g);
+            int line = lineNumbers.get(g);
+            int previousWave = g > 0 ? wave[g - 1] : 0;
+            wave[g] = parseInt(fields[0], line, "Wave", 1, Integer.MAX_VALUE);
+            if (wave[g] != previousWave && wave[g] != previousWave + 1) {
+                throw invalid(line, "expected wave " + previousWave + " or "
+                        + (previousWave + 1) + " but found wave " + wave[g]);
+            }
+            boolean sameWave = wave[g] == previousWave;
+
+            seconds[g] = parseInt(fields[1], line, "Seconds", 1, Simulation.MAX_WAVE_SECONDS);
+            if (sameWave && seconds[g] != seconds[g - 1]) {
+                throw invalid(line, "Seconds is not the same as for the rest of wave " + wave[g]);
+            }
+            delay[g] = parseInt(fields[2], line, "Delay", 0, seconds[g] - 1);
+            if (sameWave && delay[g] < delay[g - 1]) {
+                throw invalid(line, "Delay is less than that of the group before it");
+            }
+            delayTicks[g] = Simulation.secondsToTicks(delay[g]);
+
+            try {
+                archetype[g] = archetypes.find(fields[3].trim());
+            } catch (IllegalArgumentException e) {
+                throw invalid(line, "there is no archetype named " + fields[3].trim());
+            }
+            count[g] = parseInt(fields[4], line, "Count", 0, MAX_WAVE_ENEMIES);
+            parseRegion(fields[5], line, g);
+            damage[g] = parseInt(fields[6], line, "Damage", 0, MAX_DAMAGE);
+            damagePerLevel[g] = parseInt(fields[7], line, "DamagePerLevel", 0, MAX_DAMAGE);
+        }
+
+        int waves = wave[groups - 1];
+        waveTicks = new int[waves];
+        firstGroup = new int[waves + 1];
+        enemyCount = new int[waves];
+        // Summed in longs, so that a wave with too many enemies cannot overflow into a valid count
+        long[] total = new long[waves];
+        for (int g = groups - 1; g >= 0; g--) {
+            int w = wave[g] - 1;
+            waveTicks[w] = Simulation.secondsToTicks(seconds[g]);
+            firstGroup[w] = g;
+            total[w] += count[g];
+        }
+        firstGroup[waves] = groups;
+        for (int w = 0; w < waves; w++) {
+            if (total[w] == 0) {
+                throw new IllegalStateException(
+                        "Wave " + (w + 1) + " of the waves file does not have any enemies.");
+            }
+            if (total[w] > MAX_WAVE_ENEMIES) {
+                throw new IllegalStateException("Wave " + (w + 1) + " of the waves file has "
+                        + total[w] + " enemies, but may have at most " + MAX_WAVE_ENEMIES + ".");
+            }
+            enemyCount[w] = (int) total[w];
+        }
+    }
+
+    /*
+     * Returns the waves defined in the waves.txt file, reading the file the first time. Throws an
+     * IllegalStateException if the file cannot be read or is not valid (including if it names an
+     * archetype that does not exist).
+     */
+    public static synchronized WaveScript getDefault() {
+        if (defaults == null) {
+            try {
+                defaults = load(FileSystems.getDefault().getPath(PATH_TO_WAVES),
+                        Archetypes.getDefault());
+            } catch (IOException e) {
+                throw new IllegalStateException("There was an error opening the waves file.", e);
+            }
+        }
+        return defaults;
+    }
+
+    /*
+     * Reads and checks the waves file at the given path, whose archetype names refer to the given
+     * archetypes. Throws an IllegalStateException describing the first problem if the file is not
+     * valid.
+     */
+    public static WaveScript load(Path path, Archetypes archetypes) throws IOException {
+        List<String> lines = Files.readAllLines(path);
+        if (lines.isEmpty() || !lines.get(0).trim().equals(HEADER)) {
+            throw new IllegalStateException("The waves file must start with " + HEADER);
+        }
+
+        List<String[]> rows = new ArrayList<>();
+        List<Integer> lineNumbers = new ArrayList<>();
+        for (int i = 1; i < lines.size(); i++) {
+            if (lines.get(i).trim().isEmpty()) {
+                continue;
+            }
+            String[] fields = lines.get(i).split("~", -1);
+            if (fields.length != FIELDS) {
+                throw invalid(i + 1, "expected " + FIELDS + " fields but found " + fields.length);
+            }
+            rows.add(fields);
+            lineNumbers.add(i + 1);
+        }
+        if (rows.isEmpty()) {
+            throw new IllegalStateException("The waves file does not define any waves.");
+        }
+        return new WaveScript(rows, lineNumbers, archetypes);
+    }
+
+    private static IllegalStateException invalid(int line, String problem) {
+        return new IllegalStateException(
+                "Line " + line + " of the waves file is not valid: " + problem + ".");
+    }
+
+    private static int parseInt(String field, int line, String column, int min, int max) {
+        int value;
+        try {
+            value = Integer.parseInt(field.trim());
+        } catch (NumberFormatException e) {
+            throw invalid(line, column + " is not a whole number");
+        }
+        if (value < min || value > max) {
+            throw invalid(line, column + " must be between " + min + " and " + max);
+        }
+        return value;
+    }
+
+    /*
+     * Reads the Region field of the given group.
+     */
+    private void parseRegion(String field, int line, int g) {
+        String[] parts = field.split(",", -1);
+        if (parts.length != 4) {
+            throw invalid(line, "Region must be four numbers separated by commas");
+        }
+        double[] bounds = new double[4];
+        for (int i = 0; i < bounds.length; i++) {
+            try {
+                bounds[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw invalid(line, "Region is not four numbers");
+            }
+            if (!(bounds[i] >= 0 && bounds[i] <= 1)) {
+                throw invalid(line, "each number of Region must be between 0 and 1");
+            }
+        }
+        if (bounds[0] >= bounds[2] || bounds[1] >= bounds[3]) {
+            throw invalid(line, "Region must have a smaller left than right and top than bottom");
+        }
+        regionLeft[g] = bounds[0];
+        regionTop[g] = bounds[1];
+        regionRight[g] = bounds[2];
+        regionBottom[g] = bounds[3];
+    }
+
+    /*
+     * The following methods look up a wave by number (from 1 to getWaveCount()).
+     */
+
+    public int getWaveCount() {
+        return waveTicks.length;
+    }
+
+    /*
+     * Returns the number of ticks that the wave lasts before the next one starts.
+     */
+    public int getWaveTicks(int wave) {
+        return waveTicks[wave - 1];
+    }
+
+    public int getEnemyCount(int wave) {
+        return enemyCount[wave - 1];
+    }
+
+    /*
+     * Returns the number of the first group of the wave.
+     */
+    public int getFirstGroup(int wave) {
+        return firstGroup[wave - 1];
+    }
+
+    /*
+     * Returns the number one past the last group of the wave.
+     */
+    public int getGroupEnd(int wave) {
+        return firstGroup[wave];
+    }
+
+    /*
+     * The following methods look up a single field of a group by number.
+     */
+
+    /*
+     * Returns the number of ticks after the start of its wave at which the group starts to spawn.
+     */
+    public int getDelayTicks(int group) {
+        return delayTicks[group];
+    }
+
+    public int getArchetype(int group) {
+        return archetype[group];
+    }
+
+    public int getCount(int group) {
+        return count[group];
+    }
+
+    public double getRegionLeft(int group) {
+        return regionLeft[group];
+    }
+
+    public double getRegionTop(int group) {
+        return regionTop[group];
+    }
+
+    public double getRegionRight(int group) {
+        return regionRight[group];
+    }
+
+    public double getRegionBottom(int group) {
+        return regionBottom[group];
+    }
+
+    /*
+     * Returns the damage done by each enemy of the group in the given level, or Integer.MAX_VALUE
+     * if that is more.
+     */
+    public int getDamage(int group, int level) {
+        long levelDamage = damage[group] + (long) damagePerLevel[group] * (level - 1);
+        return (int) Math.min(levelDamage, Integer.MAX_VALUE);
+    }
+}